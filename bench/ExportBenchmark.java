@@ -0,0 +1,77 @@
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import java.util.zip.GZIPInputStream;
+
+// Exports a generated stream of calculated properties through TaxExporter
+// while sampling, every 10 ms, the heap still in use after the last garbage
+// collection, to show memory stays flat however many rows go through; run it
+// with a small heap, e.g. -Xmx64m. Then reads the file back and checks the
+// row count.
+// Usage: java ExportBenchmark [rows=10000000] [compressors=cores-2] [file=temp]
+public class ExportBenchmark {
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        long rows = Long.parseLong(options.getOrDefault("rows", "10000000"));
+        int compressors = Integer.parseInt(options.getOrDefault(
+            "compressors", String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() - 2))));
+        Path file = options.containsKey("file") ? Paths.get(options.get("file"))
+                                                : Files.createTempFile("export", ".csv.gz");
+
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null).toList();
+        long[] peakLive = { 0 };
+        long[] samples = { 0 };
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long live = heapPools.stream().mapToLong(pool -> pool.getCollectionUsage().getUsed()).sum();
+                peakLive[0] = Math.max(peakLive[0], live);
+                samples[0]++;
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "heap-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        Random random = new Random(42);
+        Stream<PropertyTax> properties = LongStream.rangeClosed(1, rows).mapToObj(id -> {
+            PropertyTax property = new PropertyTax(id, 1 + random.nextInt(1000), 50 + random.nextInt(500),
+                                                   1 + random.nextInt(40), random.nextBoolean() ? 'Y' : 'N');
+            property.calculateTax();
+            return property;
+        });
+        TaxExporter.Result result = new TaxExporter(compressors).exportProperties(properties, file);
+        sampler.interrupt();
+        sampler.join();
+        System.out.printf("%d compressor threads: %s\n", compressors, result);
+        System.out.printf("Heap in use after collections: at most %.1f MB of %.1f MB max (%d samples)\n",
+                          peakLive[0] / 1e6, Runtime.getRuntime().maxMemory() / 1e6, samples[0]);
+
+        long lines = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 new GZIPInputStream(Files.newInputStream(file), 1 << 16)))) {
+            while (in.readLine() != null) {
+                lines++;
+            }
+        }
+        if (!options.containsKey("file")) {
+            Files.delete(file);
+        }
+        boolean ok = lines == rows + 1;
+        System.out.println(ok ? "OK" : "FAILED: read back " + lines + " lines, expected " + (rows + 1));
+        System.exit(ok ? 0 : 1);
+    }
+}
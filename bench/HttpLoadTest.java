@@ -0,0 +1,99 @@
+import java.net.URI;
+import java.net.http.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Drives a running TaxApp --http server with concurrent clients and reports
+// latency percentiles and throughput. Each client adds a property, calculates
+// it and reads it back, then every tenth iteration reads the total.
+// Usage: java HttpLoadTest [baseUrl] [clients] [requestsPerClient]
+public class HttpLoadTest {
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int perClient = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        String auth = "Basic " + Base64.getEncoder().encodeToString("admin:admin123".getBytes(StandardCharsets.UTF_8));
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int seed = c;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                long[] latencies = new long[perClient];
+                start.await();
+                long id = 0;
+                for (int i = 0; i < perClient; i++) {
+                    HttpRequest request;
+                    if (i % 10 == 9) {
+                        request = get(baseUrl + "/total", auth);
+                    } else if (id == 0 || i % 3 == 0) {
+                        String form = "baseValue=" + (1 + random.nextInt(1000)) + "&builtUpArea=" + (1 + random.nextInt(5000))
+                                    + "&age=" + random.nextInt(60) + "&location=" + (random.nextBoolean() ? "Y" : "N");
+                        request = post(baseUrl + "/properties", form, auth);
+                    } else if (i % 3 == 1) {
+                        request = post(baseUrl + "/properties/" + id + "/calculate", "", auth);
+                    } else {
+                        request = get(baseUrl + "/properties/" + id, auth);
+                    }
+                    long begin = System.nanoTime();
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    latencies[i] = System.nanoTime() - begin;
+                    if (response.statusCode() != 200) {
+                        failures.incrementAndGet();
+                    } else if (request.method().equals("POST") && request.uri().getPath().equals("/properties")) {
+                        id = idOf(response.body());
+                    }
+                }
+                return latencies;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        long[] all = new long[clients * perClient];
+        int n = 0;
+        for (Future<long[]> future : futures) {
+            long[] latencies = future.get();
+            System.arraycopy(latencies, 0, all, n, latencies.length);
+            n += latencies.length;
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        executor.shutdown();
+
+        Arrays.sort(all);
+        System.out.printf("%d clients sent %d requests in %.2f s (%.0f requests/s), %d failed\n",
+                          clients, all.length, seconds, all.length / seconds, failures.get());
+        System.out.printf("latency ms: p50 %.2f  p90 %.2f  p99 %.2f  max %.2f\n",
+                          percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), all[all.length - 1] / 1e6);
+        // The client's worker threads would otherwise keep the JVM alive
+        System.exit(failures.get() > 0 ? 1 : 0);
+    }
+
+    private static HttpRequest get(String url, String auth) {
+        return HttpRequest.newBuilder(URI.create(url)).header("Authorization", auth).GET().build();
+    }
+
+    private static HttpRequest post(String url, String form, String auth) {
+        return HttpRequest.newBuilder(URI.create(url))
+            .header("Authorization", auth)
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(form))
+            .build();
+    }
+
+    // The server answers an add with {"id":N}
+    private static long idOf(String json) {
+        int colon = json.indexOf(':');
+        return Long.parseLong(json.substring(colon + 1, json.indexOf('}', colon)).trim());
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+}
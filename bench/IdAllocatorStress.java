@@ -0,0 +1,51 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+// Creates records from many threads at once and checks that no id repeats.
+// Exits with status 1 if a duplicate is found.
+// Usage: java IdAllocatorStress [threads] [recordsPerThread]
+public class IdAllocatorStress {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                long[] ids = new long[perThread];
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    ids[i] = (i & 1) == 0 ? new PropertyTax(1, 1, 1, 'N').getId()
+                                          : new VehicleTax(i, "Stress", 1, 1).getId();
+                }
+                return ids;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        long[] all = new long[threads * perThread];
+        int n = 0;
+        for (Future<long[]> future : futures) {
+            long[] ids = future.get();
+            System.arraycopy(ids, 0, all, n, ids.length);
+            n += ids.length;
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        executor.shutdown();
+
+        Arrays.sort(all);
+        long duplicates = 0;
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                duplicates++;
+            }
+        }
+        System.out.printf("%d threads created %d records in %.2f s (%.0f records/s), %d duplicate ids\n",
+                          threads, all.length, seconds, all.length / seconds, duplicates);
+        if (duplicates > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.*;
+
+// Compares retained heap per property record for List<PropertyTax> and PropertyTaxStore.
+// Usage: java -Xmx4g MemoryFootprintBenchmark [records]
+public class MemoryFootprintBenchmark {
+    // Keeps the records reachable until their heap has been measured
+    static volatile int sink;
+
+    public static void main(String[] args) {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        Random random = new Random(42);
+
+        long before = usedHeap();
+        List<PropertyTax> properties = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            properties.add(new PropertyTax(random.nextInt(5000), random.nextInt(3000), random.nextInt(100),
+                                           random.nextBoolean() ? 'Y' : 'N'));
+        }
+        long objectBytes = usedHeap() - before;
+        sink = properties.size();
+        properties = null;
+
+        before = usedHeap();
+        PropertyTaxStore store = new PropertyTaxStore(records);
+        random = new Random(42);
+        for (int i = 0; i < records; i++) {
+            store.add(random.nextInt(5000), random.nextInt(3000), random.nextInt(100),
+                      random.nextBoolean() ? 'Y' : 'N');
+        }
+        long storeBytes = usedHeap() - before;
+        sink = store.size();
+
+        System.out.printf("%-24s %14s %12s\n", "Model", "Heap (bytes)", "Bytes/rec");
+        System.out.printf("%-24s %14d %12.2f\n", "List<PropertyTax>", objectBytes, (double) objectBytes / records);
+        System.out.printf("%-24s %14d %12.2f\n", "PropertyTaxStore", storeBytes, (double) storeBytes / records);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,35 @@
+import java.math.BigDecimal;
+import java.util.*;
+
+// Measures how ParallelTaxCalculator scales with the number of threads.
+// Usage: java ParallelScalingBenchmark [entries] [rounds] [maxThreads]
+public class ParallelScalingBenchmark {
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int cores = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%8s %12s %12s %10s %22s\n", "Threads", "Calc (ms)", "Total (ms)", "Speedup", "Total Tax");
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(threads * 2, cores) : cores + 1) {
+            ParallelTaxCalculator calculator = new ParallelTaxCalculator(threads);
+            double bestCalc = Double.MAX_VALUE, bestTotal = Double.MAX_VALUE;
+            BigDecimal total = BigDecimal.ZERO;
+            for (int round = 0; round < rounds; round++) {
+                List<PropertyTax> properties = SampleRecords.properties(entries);
+                long start = System.nanoTime();
+                calculator.calculatePending(properties);
+                bestCalc = Math.min(bestCalc, (System.nanoTime() - start) / 1_000_000.0);
+                start = System.nanoTime();
+                total = calculator.total(properties);
+                bestTotal = Math.min(bestTotal, (System.nanoTime() - start) / 1_000_000.0);
+            }
+            calculator.shutdown();
+            if (threads == 1) {
+                baseline = bestCalc + bestTotal;
+            }
+            System.out.printf("%8d %12.2f %12.2f %10.2f %22.2f\n",
+                              threads, bestCalc, bestTotal, baseline / (bestCalc + bestTotal), total);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+// Runs a partitioned recalculation with several worker JVMs against one
+// database and kills one of them while it holds a lease, so its partition
+// has to be taken over once the lease expires. Then checks that every
+// record was calculated and the totals match a local calculation.
+// By default the database is a new H2 file opened with AUTO_SERVER, so the
+// workers can share it; the H2 jar must be on the classpath.
+// Exits with status 1 if a check fails.
+// Usage: java PartitionedCalculationTest [records=100000] [workers=4] [partitions=8]
+//                                        [lease=2] [url=jdbc:... user= password=]
+public class PartitionedCalculationTest {
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int records = Integer.parseInt(options.getOrDefault("records", "100000"));
+        int workers = Integer.parseInt(options.getOrDefault("workers", "4"));
+        int partitions = Integer.parseInt(options.getOrDefault("partitions", "8"));
+        String lease = options.getOrDefault("lease", "2");
+        Path dir = Files.createTempDirectory("partitioned");
+        String url = options.getOrDefault("url", "jdbc:h2:" + dir.resolve("tax") + ";MODE=MySQL;AUTO_SERVER=TRUE");
+        String user = options.getOrDefault("user", "sa");
+        String password = options.getOrDefault("password", "");
+
+        // Held open for the whole run; with AUTO_SERVER this process serves the database to the workers
+        JdbcTaxRepository repository = new JdbcTaxRepository(new ConnectionPool(url, user, password));
+        repository.start();
+        Money.Sum expectedProperty = new Money.Sum();
+        Money.Sum expectedVehicle = new Money.Sum();
+        insert(repository, records, expectedProperty, expectedVehicle);
+
+        PartitionedCalculation calculation = new PartitionedCalculation(repository, Long.parseLong(lease));
+        System.out.println("Planned " + calculation.plan(partitions).size() + " partitions");
+
+        long start = System.nanoTime();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            processes.add(new ProcessBuilder("java", "-cp", System.getProperty("java.class.path"), "AppTester",
+                                             "--jdbc", url, user, password, "--work", lease)
+                              .inheritIO().start());
+        }
+        Process victim = processes.get(0);
+        if (killOnceLeased(repository.pool(), victim)) {
+            System.out.println("Killed worker " + victim.pid() + " while it held a lease");
+        } else {
+            System.out.println("Worker " + victim.pid() + " exited before it could be killed");
+        }
+        for (Process process : processes) {
+            process.waitFor();
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        PartitionedCalculation.Status status = calculation.status();
+        TaxReports.Totals totals = new TaxReports(repository.pool()).totals();
+        System.out.printf("%d workers, %s in %.2f s\n", workers, status, seconds);
+        int failures = 0;
+        failures += check(status.isDone(), "every partition is finished");
+        failures += check(totals.propertyCalculated == totals.propertyCount, "every property is calculated");
+        failures += check(totals.propertyTax.compareTo(expectedProperty.value()) == 0,
+                          "property tax " + totals.propertyTax + " is " + expectedProperty.value());
+        failures += check(totals.vehicleTax.compareTo(expectedVehicle.value()) == 0,
+                          "vehicle tax " + totals.vehicleTax + " is " + expectedVehicle.value());
+        repository.close();
+        System.out.println(failures == 0 ? "OK" : failures + " checks FAILED");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // Stores the records uncalculated and adds up what their taxes will be
+    private static void insert(JdbcTaxRepository repository, int records, Money.Sum expectedProperty,
+                               Money.Sum expectedVehicle) {
+        Random random = new Random(42);
+        List<Tax> batch = new ArrayList<>();
+        for (int i = 0; i < records; i++) {
+            Tax record;
+            if (i % 4 == 3) {
+                VehicleTax vehicle = new VehicleTax(i, "Test", 80 + random.nextInt(100), 2 + random.nextInt(6));
+                if (i % 8 != 7) { // the rest have no type, so nothing to calculate
+                    vehicle.setTypeAndPrice(1 + random.nextInt(3), 100_000 + random.nextInt(900_000));
+                }
+                record = vehicle;
+            } else {
+                record = new PropertyTax(1 + random.nextInt(1000), 50 + random.nextInt(500), 1 + random.nextInt(40),
+                                         random.nextBoolean() ? 'Y' : 'N');
+            }
+            batch.add(record);
+            if (batch.size() == TaxRepository.DEFAULT_BATCH_SIZE || i == records - 1) {
+                repository.saveAll(batch);
+                for (Tax saved : batch) {
+                    if (saved instanceof PropertyTax property) {
+                        PropertyTax copy = new PropertyTax(property.getId(), property.getBaseValue(),
+                                                           property.getBuiltUpArea(), property.getAge(),
+                                                           property.getLocation());
+                        copy.calculateTax();
+                        expectedProperty.add(copy);
+                    } else if (((VehicleTax) saved).getType() != 0) {
+                        VehicleTax vehicle = (VehicleTax) saved;
+                        VehicleTax copy = new VehicleTax(vehicle.getId(), vehicle.getRegistrationNumber(),
+                                                         vehicle.getBrand(), vehicle.getVelocity(),
+                                                         vehicle.getSeatCapacity());
+                        copy.setTypeAndPrice(vehicle.getType(), vehicle.getPrice());
+                        copy.calculateTax();
+                        expectedVehicle.add(copy);
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    // Kills the worker as soon as the lease table shows it owns an unfinished partition
+    private static boolean killOnceLeased(ConnectionPool pool, Process worker) throws Exception {
+        String owner = worker.pid() + "@%";
+        while (worker.isAlive()) {
+            try (PooledConnection conn = pool.borrow()) {
+                PreparedStatement stmt = conn.prepare(
+                    "SELECT COUNT(*) FROM calculation_lease WHERE owner LIKE ? AND finished = FALSE");
+                stmt.setString(1, owner);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    if (rs.getLong(1) > 0) {
+                        worker.destroyForcibly().waitFor();
+                        return true;
+                    }
+                }
+            }
+            Thread.sleep(5);
+        }
+        return false;
+    }
+
+    private static int check(boolean ok, String description) {
+        System.out.println((ok ? "ok     " : "FAILED ") + description);
+        return ok ? 0 : 1;
+    }
+}
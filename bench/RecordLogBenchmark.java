@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+
+// Times writing, replaying and compacting a RecordLog, and checks that a torn
+// last record is detected. Exits with status 1 if a replay loses or changes data.
+// Usage: java -Xmx4g RecordLogBenchmark [records=10000000] [file]
+public class RecordLogBenchmark {
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Path file = args.length > 1 ? Paths.get(args[1]) : Files.createTempFile("records", ".log");
+        Files.deleteIfExists(file);
+
+        int vehicleCount = count / 10;
+        List<PropertyTax> properties = SampleRecords.properties(count - vehicleCount);
+        List<VehicleTax> vehicles = SampleRecords.vehicles(vehicleCount);
+        BigDecimal expectedTax;
+
+        long start = System.nanoTime();
+        try (RecordLog log = new RecordLog(file)) {
+            log.appendAll(properties);
+            log.appendAll(vehicles);
+            // Half the records are calculated after being added, so they appear twice
+            for (int i = 0; i < properties.size(); i += 2) {
+                properties.get(i).calculateTax();
+                log.append(properties.get(i));
+            }
+            for (int i = 0; i < vehicles.size(); i += 2) {
+                vehicles.get(i).calculateTax();
+                log.append(vehicles.get(i));
+            }
+            report("append", log.records(), start);
+        }
+        expectedTax = totalTax(properties, vehicles);
+        properties = null;
+        vehicles = null;
+
+        PropertyRegistry replayedProperties = new PropertyRegistry();
+        VehicleRegistry replayedVehicles = new VehicleRegistry();
+        boolean ok;
+        try (RecordLog log = new RecordLog(file)) {
+            start = System.nanoTime();
+            RecordLog.Replay replay = log.replay(replayedProperties, replayedVehicles);
+            report("replay", replay.records, start);
+            ok = check("replay", replayedProperties, replayedVehicles, count, expectedTax);
+
+            long before = Files.size(file);
+            start = System.nanoTime();
+            log.compact(replayedProperties, replayedVehicles);
+            report("compact", log.records(), start);
+            System.out.printf("compacted %d -> %d records, file %d MB\n", replay.records, log.records(),
+                              Files.size(file) >> 20);
+            if (before < Files.size(file)) {
+                ok = false;
+            }
+        }
+
+        replayedProperties = new PropertyRegistry();
+        replayedVehicles = new VehicleRegistry();
+        long records;
+        try (RecordLog log = new RecordLog(file)) {
+            start = System.nanoTime();
+            RecordLog.Replay replay = log.replay(replayedProperties, replayedVehicles);
+            report("replay after compact", replay.records, start);
+            ok &= check("replay after compact", replayedProperties, replayedVehicles, count, expectedTax);
+            records = log.records();
+        }
+
+        // Flip a byte in the last record, as a crash part-way through writing it would
+        long last = records * RecordLog.RECORD_SIZE; // the header takes one record slot
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, last + 20);
+            b.put(0, (byte) (b.get(0) ^ 0x40)).rewind();
+            channel.write(b, last + 20);
+        }
+        try (RecordLog log = new RecordLog(file)) {
+            RecordLog.Replay replay = log.replay(new PropertyRegistry(), new VehicleRegistry());
+            System.out.println("after corrupting the last record: " + replay);
+            ok &= replay.torn && replay.records == records - 1;
+        }
+
+        Files.deleteIfExists(file);
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void report(String phase, long records, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-22s %,12d records in %6.2f s (%,.0f records/s)\n", phase, records, seconds, records / seconds);
+    }
+
+    private static boolean check(String phase, PropertyRegistry properties, VehicleRegistry vehicles,
+                                 int count, BigDecimal expectedTax) {
+        BigDecimal tax = totalTax(properties, vehicles);
+        boolean ok = properties.size() + vehicles.size() == count && tax.compareTo(expectedTax) == 0;
+        if (!ok) {
+            System.out.printf("%s: expected %d records with tax %.2f but got %d with %.2f\n",
+                              phase, count, expectedTax, properties.size() + vehicles.size(), tax);
+        }
+        return ok;
+    }
+
+    private static BigDecimal totalTax(Iterable<PropertyTax> properties, Iterable<VehicleTax> vehicles) {
+        Money.Sum sum = new Money.Sum();
+        properties.forEach(sum::add);
+        vehicles.forEach(sum::add);
+        return sum.value();
+    }
+}
@@ -0,0 +1,206 @@
+import java.math.BigDecimal;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.stream.*;
+
+// Runs the same checks against every TaxRepository backend, then times the
+// bulk operations on each: saveAll, a full stream and updateTaxBatch.
+// The JDBC backend is included when a URL is given, with write-behind as the
+// application runs it; it creates the tables if they are missing and refuses
+// to run unless they are empty.
+// Exits with status 1 if any check fails.
+// Usage: java RepositoryConformance [records=100000] [jdbcUrl user password]
+public class RepositoryConformance {
+    private interface Backend {
+        // Opens the storage again; null for storage that doesn't outlive the repository
+        TaxRepository open() throws Exception;
+    }
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        run("memory", records, new InMemoryTaxRepository(), null);
+
+        Path file = Files.createTempFile("conformance", ".log");
+        Files.delete(file);
+        run("file", records, FileTaxRepository.open(file), () -> FileTaxRepository.open(file));
+        Files.deleteIfExists(file);
+
+        if (args.length > 3) {
+            String url = args[1], user = args[2], password = args[3];
+            TaxRepository repository = jdbc(url, user, password); // creates the tables by migration
+            if (repository.propertyCount() + repository.vehicleCount() != 0) {
+                repository.close();
+                throw new IllegalStateException("The conformance run needs empty property_tax and vehicle_tax tables.");
+            }
+            run("jdbc", records, repository, () -> jdbc(url, user, password));
+        }
+
+        System.out.println(failures == 0 ? "OK" : failures + " checks FAILED");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void run(String name, int records, TaxRepository repository, Backend reopen) throws Exception {
+        System.out.println("== " + name);
+        try {
+            conformance(repository);
+            performance(repository, records);
+        } finally {
+            repository.close();
+        }
+        if (reopen != null) {
+            try (TaxRepository reopened = reopen.open()) {
+                persistence(reopened, records);
+            }
+        }
+    }
+
+    private static void conformance(TaxRepository repository) {
+        PropertyTax property = new PropertyTax(1000, 20, 5, 'Y');
+        repository.addProperty(property);
+        PropertyTax found = repository.findProperty(property.getId());
+        check(found != null && found.getBaseValue() == 1000 && found.getBuiltUpArea() == 20
+              && found.getAge() == 5 && found.getLocation() == 'Y' && found.isPending(), "added property is found");
+        check(repository.findProperty(-1) == null, "missing property is null");
+
+        found.calculateTax();
+        repository.updateTax(found);
+        check(repository.findProperty(property.getId()).getTax() == 100_010.0, "updated property tax is stored");
+        check(repository.totals().tax(RunningTotals.Category.PROPERTY).compareTo(new BigDecimal("100010")) == 0,
+              "totals follow a calculation");
+        check(repository.totals().count(RunningTotals.Category.PROPERTY) == 1, "totals count calculated records");
+
+        check(repository.addVehicle(new VehicleTax(7, "Tata", 100, 4)), "vehicle is added");
+        check(!repository.addVehicle(new VehicleTax(7, "Honda", 120, 5)), "duplicate vehicle is refused");
+        VehicleTax vehicle = repository.findVehicle(7);
+        check(vehicle != null && vehicle.getBrand().equals("Tata"), "first vehicle is kept");
+        check(repository.findVehicle(8) == null, "missing vehicle is null");
+        vehicle.setTypeAndPrice(2, 100_000);
+        vehicle.calculateTax();
+        repository.updateTax(vehicle);
+        VehicleTax reloaded = repository.findVehicle(7);
+        check(reloaded.getType() == 2 && reloaded.getPrice() == 100_000 && near(reloaded.getTax(), 11_104.0),
+              "vehicle type, price and tax are stored");
+
+        VehicleTax duplicate = new VehicleTax(7, "Maruti", 90, 4);
+        List<Tax> batch = List.of(new PropertyTax(10, 10, 10, 'N'), new VehicleTax(9, "Maruti", 90, 4), duplicate,
+                                  new VehicleTax(11, "Hyundai", 90, 4));
+        List<Tax> rejected = repository.saveAll(batch);
+        check(rejected.size() == 1 && rejected.get(0) == duplicate, "saveAll rejects only the duplicate");
+        check(repository.propertyCount() == 2 && repository.vehicleCount() == 3, "counts include saveAll records");
+
+        List<Long> pagedIds = new ArrayList<>();
+        for (List<PropertyTax> page = repository.propertyPage(0, 1); !page.isEmpty();
+             page = repository.propertyPage(page.get(0).getId(), 1)) {
+            pagedIds.add(page.get(0).getId());
+        }
+        List<Long> streamedIds;
+        try (Stream<PropertyTax> properties = repository.streamAllProperties()) {
+            streamedIds = properties.map(Tax::getId).collect(Collectors.toList());
+        }
+        check(pagedIds.equals(streamedIds) && pagedIds.size() == 2, "pages and stream agree");
+        try (Stream<VehicleTax> vehicles = repository.streamVehiclesAfter(7)) {
+            check(vehicles.mapToInt(VehicleTax::getRegistrationNumber).boxed().collect(Collectors.toList())
+                      .equals(List.of(9, 11)), "vehicle stream resumes after a registration number");
+        }
+
+        List<Tax> pending;
+        try (Stream<PropertyTax> properties = repository.streamAllProperties();
+             Stream<VehicleTax> vehicles = repository.streamAllVehicles()) {
+            // Vehicles need a fuel type before they count as pending
+            Stream<VehicleTax> typed = vehicles.peek(v -> {
+                if (v.getType() == 0) {
+                    v.setTypeAndPrice(1, 50_000);
+                }
+            });
+            pending = Stream.concat(properties, typed).filter(Tax::isPending).collect(Collectors.toList());
+        }
+        pending.forEach(Tax::calculateTax);
+        repository.updateTaxBatch(pending);
+        check(pending.size() == 3, "pending records are streamed");
+        check(near(repository.findVehicle(11).getTax(), 594.0), "updateTaxBatch stores the tax");
+        check(repository.reconcile().stream().allMatch(RunningTotals.Reconciliation::matches),
+              "running totals match a full recompute");
+
+        double reported = repository.summary().stream()
+            .filter(row -> row.report.equals("Property by Location")).mapToDouble(row -> row.total).sum();
+        check(near(reported, repository.totals().tax(RunningTotals.Category.PROPERTY).doubleValue()),
+              "summary agrees with the totals");
+    }
+
+    private static void performance(TaxRepository repository, int records) {
+        List<PropertyTax> properties = SampleRecords.properties(records - records / 10);
+        List<Tax> all = new ArrayList<>(properties);
+        Random random = new Random(42);
+        for (int i = 0; i < records / 10; i++) {
+            all.add(new VehicleTax(1_000_000 + i, "Brand" + random.nextInt(50), 100, 4));
+        }
+
+        long start = System.nanoTime();
+        check(repository.saveAll(all).isEmpty(), "saveAll stores every new record");
+        report("saveAll", all.size(), start);
+
+        start = System.nanoTime();
+        long streamed;
+        try (Stream<PropertyTax> stream = repository.streamAllProperties()) {
+            streamed = stream.count();
+        }
+        report("streamAllProperties", streamed, start);
+        check(streamed == repository.propertyCount(), "stream returns every property");
+
+        long updated = 0;
+        start = System.nanoTime();
+        try (Stream<PropertyTax> stream = repository.streamAllProperties()) {
+            List<PropertyTax> chunk = new ArrayList<>();
+            for (Iterator<PropertyTax> it = stream.iterator(); it.hasNext(); ) {
+                chunk.add(it.next());
+                if (chunk.size() == TaxRepository.DEFAULT_BATCH_SIZE || !it.hasNext()) {
+                    chunk.forEach(Tax::calculateTax);
+                    repository.updateTaxBatch(chunk);
+                    updated += chunk.size();
+                    chunk.clear();
+                }
+            }
+        }
+        report("calculate+updateTaxBatch", updated, start);
+        check(repository.reconcile().stream().allMatch(RunningTotals.Reconciliation::matches),
+              "running totals match after the bulk update");
+        repository.flush();
+    }
+
+    // The records written before the repository was closed are all still there
+    private static void persistence(TaxRepository repository, int records) {
+        check(repository.propertyCount() == 2 + records - records / 10
+              && repository.vehicleCount() == 3 + records / 10, "records survive reopening");
+        check(near(repository.findVehicle(7).getTax(), 11_104.0), "tax survives reopening");
+        check(repository.reconcile().stream().allMatch(RunningTotals.Reconciliation::matches),
+              "reloaded totals match a full recompute");
+    }
+
+    private static TaxRepository jdbc(String url, String user, String password) throws SQLException {
+        JdbcTaxRepository repository = new JdbcTaxRepository(new ConnectionPool(url, user, password));
+        repository.start();
+        repository.enableWriteBehind(JdbcTaxRepository.WRITE_BEHIND_CAPACITY, JdbcTaxRepository.WRITE_BEHIND_DELAY_MILLIS);
+        return repository;
+    }
+
+
+    private static void check(boolean ok, String description) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + description);
+        }
+    }
+
+    private static boolean near(double actual, double expected) {
+        return Math.abs(actual - expected) <= 1e-9 * Math.max(1.0, Math.abs(expected));
+    }
+
+    private static void report(String phase, long records, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-26s %,10d records in %6.2f s (%,.0f records/s)\n", phase, records, seconds, records / seconds);
+    }
+}
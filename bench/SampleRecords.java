@@ -0,0 +1,38 @@
+import java.util.*;
+
+// Generated records for the benchmarks, the same for a given count on every run
+final class SampleRecords {
+    private SampleRecords() {
+    }
+
+    static List<PropertyTax> properties(int count) {
+        Random random = new Random(42);
+        List<PropertyTax> properties = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            properties.add(new PropertyTax(random.nextInt(5000), random.nextInt(3000), random.nextInt(100),
+                                           random.nextBoolean() ? 'Y' : 'N'));
+        }
+        return properties;
+    }
+
+    static PropertyTaxStore store(List<PropertyTax> properties) {
+        PropertyTaxStore store = new PropertyTaxStore(properties.size());
+        for (PropertyTax property : properties) {
+            store.add(property.getBaseValue(), property.getBuiltUpArea(), property.getAge(), property.getLocation());
+        }
+        return store;
+    }
+
+    static List<VehicleTax> vehicles(int count) {
+        Random random = new Random(42);
+        String[] brands = { "Maruti", "Tata", "Mahindra", "Hyundai", "Honda" };
+        List<VehicleTax> vehicles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            VehicleTax vehicle = new VehicleTax(i + 1, brands[random.nextInt(brands.length)],
+                                                80 + random.nextInt(120), 2 + random.nextInt(6));
+            vehicle.setTypeAndPrice(1 + random.nextInt(3), 100_000 + random.nextInt(2_000_000));
+            vehicles.add(vehicle);
+        }
+        return vehicles;
+    }
+}
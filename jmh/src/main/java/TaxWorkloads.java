@@ -0,0 +1,473 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.*;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Stream;
+
+import taxbench.Workload;
+import taxbench.Workloads;
+
+// The workloads behind the JMH benchmarks in taxbench; see Workloads for why
+// they live here. Records are generated while a workload is built, so only
+// its run() is timed.
+public class TaxWorkloads implements Workloads {
+    @Override
+    public Workload calculate(String method) {
+        List<PropertyTax> properties = SampleRecords.properties(RECORDS);
+        return switch (method) {
+            case "property" -> () -> {
+                double sum = 0;
+                for (PropertyTax property : properties) {
+                    property.calculateTax();
+                    sum += property.getTax();
+                }
+                return sum;
+            };
+            // Same records as property, held in a PropertyTaxStore
+            case "store" -> {
+                PropertyTaxStore store = SampleRecords.store(properties);
+                store.calculateAll();
+                for (int id = 1; id <= store.size(); id++) {
+                    PropertyTax property = properties.get(id - 1);
+                    property.calculateTax();
+                    if (Double.compare(property.getTax(), store.getTax(id)) != 0) {
+                        throw new IllegalStateException("PropertyTaxStore differs from PropertyTax at id " + id);
+                    }
+                }
+                yield () -> {
+                    store.calculateAll();
+                    return store.getTax(store.size());
+                };
+            }
+            case "vehicle" -> {
+                List<VehicleTax> vehicles = SampleRecords.vehicles(RECORDS);
+                yield () -> {
+                    double sum = 0;
+                    for (VehicleTax vehicle : vehicles) {
+                        vehicle.calculateTax();
+                        sum += vehicle.getTax();
+                    }
+                    return sum;
+                };
+            }
+            default -> throw unknown("calculate", method);
+        };
+    }
+
+    @Override
+    public Workload total(String method, int size) {
+        List<PropertyTax> properties = SampleRecords.properties(size);
+        properties.forEach(Tax::calculateTax);
+        return switch (method) {
+            case "stream" -> () -> properties.stream().mapToDouble(Tax::getTax).sum();
+            case "parallel" -> {
+                ParallelTaxCalculator calculator = new ParallelTaxCalculator();
+                yield new Workload() {
+                    @Override
+                    public double run() {
+                        return calculator.total(properties).doubleValue();
+                    }
+
+                    @Override
+                    public void close() {
+                        calculator.shutdown();
+                    }
+                };
+            }
+            case "running" -> {
+                TaxRepository repository = new InMemoryTaxRepository();
+                repository.saveAll(properties);
+                yield () -> repository.totals().tax(RunningTotals.Category.PROPERTY).doubleValue();
+            }
+            default -> throw unknown("total", method);
+        };
+    }
+
+    @Override
+    public Workload lookup(String method, int size) {
+        List<VehicleTax> vehicles = SampleRecords.vehicles(size);
+        Random random = new Random(7);
+        return switch (method) {
+            case "streamScan" -> () -> {
+                int registrNo = 1 + random.nextInt(size);
+                return vehicles.stream()
+                    .filter(v -> v.getRegistrationNumber() == registrNo)
+                    .findFirst()
+                    .orElse(null)
+                    .getTax();
+            };
+            case "registry" -> {
+                VehicleRegistry registry = new VehicleRegistry(size);
+                vehicles.forEach(registry::add);
+                yield () -> registry.get(1 + random.nextInt(size)).getTax();
+            }
+            default -> throw unknown("lookup", method);
+        };
+    }
+
+    // System.out is set up like the real one (autoflush, small buffer) but
+    // discards its output, until the workload is closed
+    @Override
+    public Workload display(String method) {
+        List<PropertyTax> properties = SampleRecords.properties(RECORDS);
+        properties.forEach(Tax::calculateTax);
+        List<VehicleTax> vehicles = SampleRecords.vehicles(RECORDS);
+        vehicles.forEach(Tax::calculateTax);
+        Workload rows = switch (method) {
+            case "property" -> () -> {
+                properties.forEach(property -> System.out.printf("%5d %15d %10d %10c %10.2f\n", property.getId(),
+                    property.getBuiltUpArea(), property.getBaseValue(), property.getLocation(), property.getTax()));
+                return properties.size();
+            };
+            case "property.table" -> () -> {
+                try (TableWriter table = TableWriter.toStdout(PropertyTax.COLUMNS)) {
+                    for (PropertyTax property : properties) {
+                        property.writeRow(table);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return properties.size();
+            };
+            case "vehicle" -> () -> {
+                vehicles.forEach(vehicle -> System.out.printf("%5d %15s %10d %10d %10s %10d %10.2f\n",
+                    vehicle.getRegistrationNumber(), vehicle.getBrand(), vehicle.getVelocity(),
+                    vehicle.getSeatCapacity(), VehicleTax.fuelTypeName(vehicle.getType()), vehicle.getPrice(),
+                    vehicle.getTax()));
+                return vehicles.size();
+            };
+            case "vehicle.table" -> () -> {
+                try (TableWriter table = TableWriter.toStdout(VehicleTax.COLUMNS)) {
+                    for (VehicleTax vehicle : vehicles) {
+                        vehicle.writeRow(table);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return vehicles.size();
+            };
+            default -> throw unknown("display", method);
+        };
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new BufferedOutputStream(OutputStream.nullOutputStream(), 128), true));
+        return new Workload() {
+            @Override
+            public double run() {
+                return rows.run();
+            }
+
+            @Override
+            public void close() {
+                System.setOut(stdout);
+            }
+        };
+    }
+
+    // Generated record fields, one array per column
+    private static class Columns {
+        final int size;
+        final int[] baseValue, builtUpArea, age, velocity, seats, type, price;
+        final char[] location;
+
+        Columns(int size) {
+            this.size = size;
+            baseValue = new int[size];
+            builtUpArea = new int[size];
+            age = new int[size];
+            location = new char[size];
+            velocity = new int[size];
+            seats = new int[size];
+            type = new int[size];
+            price = new int[size];
+            Random random = new Random(42);
+            for (int i = 0; i < size; i++) {
+                baseValue[i] = random.nextInt(5000);
+                builtUpArea[i] = random.nextInt(3000);
+                age[i] = random.nextInt(100);
+                location[i] = random.nextBoolean() ? 'Y' : 'N';
+                velocity[i] = 80 + random.nextInt(120);
+                seats[i] = 2 + random.nextInt(6);
+                type[i] = 1 + random.nextInt(3);
+                price[i] = 100_000 + random.nextInt(2_000_000);
+            }
+        }
+    }
+
+    // Over the same columns, so the difference is only the rate lookup
+    @Override
+    public Workload rates(String method, int records) {
+        Columns c = new Columns(records);
+        TaxRates rates = TaxRates.DEFAULT;
+        for (int i = 0; i < Math.min(c.size, 1 << 16); i++) {
+            if (Money.paise(hardcodedPropertyTax(c.baseValue[i], c.builtUpArea[i], c.age[i], c.location[i]))
+                    != rates.propertyTax(c.baseValue[i], c.builtUpArea[i], c.age[i], c.location[i])
+                || Money.paise(hardcodedVehicleTax(c.velocity[i], c.seats[i], c.type[i], c.price[i]))
+                    != rates.vehicleTax(c.velocity[i], c.seats[i], c.type[i], c.price[i])) {
+                throw new IllegalStateException("TaxRates differs from the hardcoded formulas at record " + i);
+            }
+        }
+        return switch (method) {
+            case "property.hardcoded" -> () -> {
+                double sum = 0;
+                for (int i = 0; i < c.size; i++) {
+                    sum += hardcodedPropertyTax(c.baseValue[i], c.builtUpArea[i], c.age[i], c.location[i]);
+                }
+                return sum;
+            };
+            case "property.table" -> () -> {
+                long sum = 0;
+                for (int i = 0; i < c.size; i++) {
+                    sum += rates.propertyTax(c.baseValue[i], c.builtUpArea[i], c.age[i], c.location[i]);
+                }
+                return sum;
+            };
+            case "vehicle.hardcoded" -> () -> {
+                double sum = 0;
+                for (int i = 0; i < c.size; i++) {
+                    sum += hardcodedVehicleTax(c.velocity[i], c.seats[i], c.type[i], c.price[i]);
+                }
+                return sum;
+            };
+            case "vehicle.table" -> () -> {
+                long sum = 0;
+                for (int i = 0; i < c.size; i++) {
+                    sum += rates.vehicleTax(c.velocity[i], c.seats[i], c.type[i], c.price[i]);
+                }
+                return sum;
+            };
+            default -> throw unknown("rates", method);
+        };
+    }
+
+    // The double total is the only inexact one; how far it is off is printed
+    // when the workload is built, after checking the fixed-point total
+    // against the BigDecimal one
+    @Override
+    public Workload money(String method, int records) {
+        Columns c = new Columns(records);
+        BigDecimal y = new BigDecimal("0.5");
+        BigDecimal[] fuelRate = { null, new BigDecimal("0.01"), new BigDecimal("0.11"), new BigDecimal("0.12") };
+        TaxRates rates = TaxRates.DEFAULT;
+        Workload inDouble = () -> {
+            double sum = 0;
+            for (int i = 0; i < c.size; i++) {
+                sum += hardcodedPropertyTax(c.baseValue[i], c.builtUpArea[i], c.age[i], c.location[i]);
+                sum += hardcodedVehicleTax(c.velocity[i], c.seats[i], c.type[i], c.price[i]);
+            }
+            return sum;
+        };
+        Workload inBigDecimal = () -> {
+            BigDecimal sum = BigDecimal.ZERO;
+            for (int i = 0; i < c.size; i++) {
+                BigDecimal property = BigDecimal.valueOf((long) c.baseValue[i] * c.builtUpArea[i] * c.age[i]);
+                if (c.location[i] == 'Y') {
+                    property = property.add(y.multiply(BigDecimal.valueOf(c.builtUpArea[i])));
+                }
+                BigDecimal vehicle = BigDecimal.valueOf(c.velocity[i] + c.seats[i])
+                    .add(fuelRate[c.type[i]].multiply(BigDecimal.valueOf(c.price[i])));
+                sum = sum.add(Money.round(property)).add(Money.round(vehicle));
+            }
+            return sum.doubleValue();
+        };
+        Workload fixed = () -> {
+            Money.Sum sum = new Money.Sum();
+            for (int i = 0; i < c.size; i++) {
+                sum.add(rates.propertyTax(c.baseValue[i], c.builtUpArea[i], c.age[i], c.location[i]));
+                sum.add(rates.vehicleTax(c.velocity[i], c.seats[i], c.type[i], c.price[i]));
+            }
+            return sum.value().doubleValue();
+        };
+
+        BigDecimal exact = BigDecimal.ZERO;
+        Money.Sum paise = new Money.Sum();
+        for (int i = 0; i < c.size; i++) {
+            BigDecimal property = BigDecimal.valueOf((long) c.baseValue[i] * c.builtUpArea[i] * c.age[i]);
+            if (c.location[i] == 'Y') {
+                property = property.add(y.multiply(BigDecimal.valueOf(c.builtUpArea[i])));
+            }
+            BigDecimal vehicle = BigDecimal.valueOf(c.velocity[i] + c.seats[i])
+                .add(fuelRate[c.type[i]].multiply(BigDecimal.valueOf(c.price[i])));
+            exact = exact.add(Money.round(property)).add(Money.round(vehicle));
+            paise.add(rates.propertyTax(c.baseValue[i], c.builtUpArea[i], c.age[i], c.location[i]));
+            paise.add(rates.vehicleTax(c.velocity[i], c.seats[i], c.type[i], c.price[i]));
+        }
+        if (paise.value().compareTo(exact) != 0) {
+            throw new IllegalStateException("Fixed-point total " + paise.value() + " differs from BigDecimal " + exact);
+        }
+        System.out.printf("money: double total is off by %s over %,d records\n",
+                          new BigDecimal(inDouble.run()).subtract(exact).setScale(6, RoundingMode.HALF_EVEN)
+                              .toPlainString(), c.size);
+
+        return switch (method) {
+            case "double" -> inDouble;
+            case "bigDecimal" -> inBigDecimal;
+            case "fixed" -> fixed;
+            default -> throw unknown("money", method);
+        };
+    }
+
+    // chunk.timed times the chunk once, as calculateAllPending does, though
+    // with far smaller chunks
+    @Override
+    public Workload metrics(String method) {
+        List<PropertyTax> properties = SampleRecords.properties(RECORDS);
+        return switch (method) {
+            case "record" -> {
+                Metrics.Operation recordOp = Metrics.operation("bench.record");
+                yield () -> {
+                    for (int i = 0; i < RECORDS; i++) {
+                        recordOp.record(System.nanoTime(), 1);
+                    }
+                    return RECORDS;
+                };
+            }
+            case "chunk.untimed" -> () -> {
+                double sum = 0;
+                for (PropertyTax property : properties) {
+                    property.calculateTax();
+                    sum += property.getTax();
+                }
+                return sum;
+            };
+            case "chunk.timed" -> {
+                Metrics.Operation chunkOp = Metrics.operation("bench.chunk");
+                yield () -> {
+                    long start = System.nanoTime();
+                    double sum = 0;
+                    for (PropertyTax property : properties) {
+                        property.calculateTax();
+                        sum += property.getTax();
+                    }
+                    chunkOp.record(start, properties.size());
+                    return sum;
+                };
+            }
+            default -> throw unknown("metrics", method);
+        };
+    }
+
+    @Override
+    public Workload ingestRows(String table, int records) {
+        Database database = new Database();
+        return switch (table) {
+            case "property" -> database.workload(() -> {
+                List<PropertyTax> properties = database.properties(records);
+                properties.forEach(database.repository::addProperty);
+                return properties.size();
+            });
+            case "vehicle" -> database.workload(() -> {
+                List<VehicleTax> vehicles = database.vehicles(records);
+                vehicles.forEach(database.repository::addVehicle);
+                return vehicles.size();
+            });
+            default -> throw unknown("ingestRows", table);
+        };
+    }
+
+    @Override
+    public Workload ingestBatches(String table, int records, int transactionSize, int rowsPerInsert) {
+        Database database = new Database();
+        database.repository.setInsertSizes(transactionSize, rowsPerInsert);
+        return switch (table) {
+            case "property" -> database.workload(() -> {
+                List<PropertyTax> properties = database.properties(records);
+                database.repository.saveAll(properties);
+                return properties.size();
+            });
+            case "vehicle" -> database.workload(() -> {
+                List<VehicleTax> vehicles = database.vehicles(records);
+                database.repository.saveAll(vehicles);
+                return vehicles.size();
+            });
+            default -> throw unknown("ingestBatches", table);
+        };
+    }
+
+    // A new H2 file database in a temporary directory, deleted on close.
+    // Properties take their ids from its id sequence, vehicles are numbered on.
+    private static class Database {
+        final Path dir;
+        final JdbcTaxRepository repository;
+        final Random random = new Random(42);
+        int registrNo;
+
+        Database() {
+            try {
+                dir = Files.createTempDirectory("ingest");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            repository = new JdbcTaxRepository(new ConnectionPool("jdbc:h2:" + dir.resolve("tax") + ";MODE=MySQL",
+                                                                  "sa", ""));
+            try {
+                repository.start();
+            } catch (SQLException e) {
+                throw new StorageException("Could not create the database in " + dir, e);
+            }
+        }
+
+        List<PropertyTax> properties(int count) {
+            List<PropertyTax> properties = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                properties.add(new PropertyTax(1 + random.nextInt(1000), 50 + random.nextInt(500),
+                                               1 + random.nextInt(40), random.nextBoolean() ? 'Y' : 'N'));
+            }
+            return properties;
+        }
+
+        List<VehicleTax> vehicles(int count) {
+            List<VehicleTax> vehicles = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                VehicleTax vehicle = new VehicleTax(++registrNo, "Test", 80 + random.nextInt(100),
+                                                    2 + random.nextInt(6));
+                vehicle.setTypeAndPrice(1 + random.nextInt(3), 100_000 + random.nextInt(900_000));
+                vehicles.add(vehicle);
+            }
+            return vehicles;
+        }
+
+        Workload workload(Workload inserts) {
+            return new Workload() {
+                @Override
+                public double run() {
+                    return inserts.run();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    repository.close();
+                    try (Stream<Path> files = Files.walk(dir)) {
+                        for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                            Files.delete(file);
+                        }
+                    }
+                }
+            };
+        }
+    }
+
+    // The property and vehicle formulas as they were before TaxRates
+    private static double hardcodedPropertyTax(int baseValue, int builtUpArea, int age, char location) {
+        if (location == 'Y' || location == 'y') {
+            return (baseValue * builtUpArea * age) + (0.5 * builtUpArea);
+        } else if (location == 'N' || location == 'n') {
+            return baseValue * builtUpArea * age;
+        }
+        return Double.NaN;
+    }
+
+    private static double hardcodedVehicleTax(int velocity, int seatCapacity, int type, int price) {
+        return switch (type) {
+            case 1 -> velocity + seatCapacity + (0.01 * price); // Petrol
+            case 2 -> velocity + seatCapacity + (0.11 * price); // Diesel
+            case 3 -> velocity + seatCapacity + (0.12 * price); // CNG
+            default -> Double.NaN;
+        };
+    }
+
+    private static IllegalArgumentException unknown(String workload, String method) {
+        return new IllegalArgumentException("No " + workload + " workload " + method);
+    }
+}
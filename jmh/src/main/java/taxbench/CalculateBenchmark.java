@@ -0,0 +1,37 @@
+package taxbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// PropertyTax and VehicleTax.calculateTax() throughput, and PropertyTaxStore
+// calculating the same properties; an operation is one record
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CalculateBenchmark {
+    @Param({ "property", "store", "vehicle" })
+    public String method;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load().calculate(method);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workload.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workloads.RECORDS)
+    public double calculate() {
+        return workload.run();
+    }
+}
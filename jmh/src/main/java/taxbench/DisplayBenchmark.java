@@ -0,0 +1,37 @@
+package taxbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Formatting the display-all tables, a printf per row against one
+// TableWriter, with the output discarded; an operation is one row
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DisplayBenchmark {
+    @Param({ "property", "property.table", "vehicle", "vehicle.table" })
+    public String method;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load().display(method);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workload.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workloads.RECORDS)
+    public double display() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,73 @@
+package taxbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Inserting records into an H2 file database: one addProperty() or
+// addVehicle() per record, and saveAll() sending plain JDBC batches (rows=1)
+// or multi-row INSERT statements, at several transaction sizes. An operation
+// is one record inserted.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IngestBenchmark {
+    static final int RECORDS = 10_000; // per invocation
+
+    @State(Scope.Benchmark)
+    public static class Rows {
+        @Param({ "property", "vehicle" })
+        public String table;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() {
+            workload = Workloads.load().ingestRows(table, RECORDS);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Batches {
+        @Param({ "property", "vehicle" })
+        public String table;
+
+        @Param({ "100", "1000", "10000" })
+        public int transaction;
+
+        @Param({ "1", "100" })
+        public int rows;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() {
+            workload = Workloads.load().ingestBatches(table, RECORDS, transaction, rows);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            workload.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public double row(Rows state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public double saveAll(Batches state) {
+        return state.workload.run();
+    }
+}
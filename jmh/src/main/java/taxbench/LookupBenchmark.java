@@ -0,0 +1,39 @@
+package taxbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Finding a vehicle by registration number by scanning the list, and in a
+// VehicleRegistry; an operation is one lookup
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LookupBenchmark {
+    @Param({ "streamScan", "registry" })
+    public String method;
+
+    @Param({ "1000000" })
+    public int size;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load().lookup(method, size);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workload.close();
+    }
+
+    @Benchmark
+    public double lookup() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,38 @@
+package taxbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// What the metrics cost: one Metrics.Operation.record() on its own, and the
+// calculate loop timed once per chunk against the same loop untimed; an
+// operation is one record
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MetricsBenchmark {
+    @Param({ "record", "chunk.untimed", "chunk.timed" })
+    public String method;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load().metrics(method);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workload.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workloads.RECORDS)
+    public double metrics() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,39 @@
+package taxbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Calculating and totalling taxes in double, in BigDecimal and in
+// fixed-point paise; an operation is one pass over all the records
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MoneyBenchmark {
+    @Param({ "double", "bigDecimal", "fixed" })
+    public String method;
+
+    @Param({ "10000000" })
+    public int records;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load().money(method, records);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workload.close();
+    }
+
+    @Benchmark
+    public double money() {
+        return workload.run();
+    }
+}
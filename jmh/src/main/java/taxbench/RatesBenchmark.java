@@ -0,0 +1,39 @@
+package taxbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// The compiled TaxRates lookup arrays against the hardcoded formulas they
+// replaced; an operation is one pass over all the records
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RatesBenchmark {
+    @Param({ "property.hardcoded", "property.table", "vehicle.hardcoded", "vehicle.table" })
+    public String method;
+
+    @Param({ "10000000" })
+    public int records;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load().rates(method, records);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workload.close();
+    }
+
+    @Benchmark
+    public double rates() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,40 @@
+package taxbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// The totals path over registries of 1K, 1M and 10M properties: the stream
+// sum, ParallelTaxCalculator's exact total and the running totals the
+// repositories keep; an operation is one total
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TotalBenchmark {
+    @Param({ "stream", "parallel", "running" })
+    public String method;
+
+    @Param({ "1000", "1000000", "10000000" })
+    public int size;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load().total(method, size);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workload.close();
+    }
+
+    @Benchmark
+    public double total() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,14 @@
+package taxbench;
+
+import java.io.IOException;
+
+// One invocation of a benchmark: runs the measured work and returns a result
+// for JMH to consume, so the JIT cannot drop the work
+public interface Workload extends AutoCloseable {
+    double run();
+
+    // Releases what the workload holds open, e.g. a database
+    @Override
+    default void close() throws IOException {
+    }
+}
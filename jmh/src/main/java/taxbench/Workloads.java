@@ -0,0 +1,55 @@
+package taxbench;
+
+// Builds the workloads the benchmarks in this package measure. JMH only
+// accepts benchmark classes in a named package, while the application is in
+// the unnamed package, which no named package can refer to. So the benchmarks
+// here set the parameters and time the calls, and TaxWorkloads, in the unnamed
+// package, sets up the records and implements each workload.
+public interface Workloads {
+    // Records per invocation of the calculate, display and metrics workloads
+    int RECORDS = 1024;
+
+    static Workloads load() {
+        try {
+            return (Workloads) Class.forName("TaxWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("TaxWorkloads is not on the classpath", e);
+        }
+    }
+
+    // method: property, store (PropertyTaxStore), vehicle
+    Workload calculate(String method);
+
+    // One total over a registry of size properties;
+    // method: stream, parallel (ParallelTaxCalculator), running (RunningTotals)
+    Workload total(String method, int size);
+
+    // One lookup of a random vehicle among size; method: streamScan, registry
+    Workload lookup(String method, int size);
+
+    // RECORDS rows written to System.out, which the workload discards;
+    // method: property, vehicle (printf per row) or property.table,
+    // vehicle.table (TableWriter)
+    Workload display(String method);
+
+    // One pass over records generated records, the compiled rate tables
+    // against the formulas they replaced;
+    // method: property.hardcoded, property.table, vehicle.hardcoded, vehicle.table
+    Workload rates(String method, int records);
+
+    // One pass calculating and totalling a property and a vehicle tax per
+    // record; method: double, bigDecimal, fixed (Money paise)
+    Workload money(String method, int records);
+
+    // method: record (RECORDS Metrics.Operation.record() calls),
+    // chunk.untimed, chunk.timed (the calculate property loop, timed once)
+    Workload metrics(String method);
+
+    // Inserts records new records into a new H2 database in a temporary
+    // directory, one addProperty() or addVehicle() each; table: property, vehicle
+    Workload ingestRows(String table, int records);
+
+    // Same with one saveAll(), in transactions of transactionSize records and
+    // INSERT statements of rowsPerInsert rows (1 for plain JDBC batches)
+    Workload ingestBatches(String table, int records, int transactionSize, int rowsPerInsert);
+}
@@ -1,148 +1,185 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-// Custom Exceptions
-class InvalidInputException extends Exception {
-    public InvalidInputException(String message) {
-        super(message);
-    }
-}
-
-// Base Tax Class
-abstract class Tax {
-    protected static int idCounter = 1;
-    protected int id;
-    protected double tax;
-
-    public Tax() {
-        this.id = idCounter++;
-        this.tax = 0.0; // Initially, the tax is not calculated
-    }
-
-    public abstract void calculateTax();
-
-    public abstract void displayDetails();
-
-    public double getTax() {
-        return tax;
-    }
-}
-
-// PropertyTax Class
-class PropertyTax extends Tax {
-    private int baseValue;
-    private int builtUpArea;
-    private int age;
-    private char location;
-
-    public PropertyTax(int baseValue, int builtUpArea, int age, char location) {
-        super();
-        this.baseValue = baseValue;
-        this.builtUpArea = builtUpArea;
-        this.age = age;
-        this.location = location;
-    }
-
-    @Override
-    public void calculateTax() {
-        if (location == 'Y' || location == 'y') {
-            this.tax = (baseValue * builtUpArea * age) + (0.5 * builtUpArea);
-        } else if (location == 'N' || location == 'n') {
-            this.tax = baseValue * builtUpArea * age;
+// Main Application Class
+public class AppTester {
+    private static final ParallelTaxCalculator CALCULATOR = new ParallelTaxCalculator();
+    private static final String DEFAULT_LOG_FILE = "tax-records.log";
+    private static final String DEFAULT_RATES_FILE = "tax-rates.conf";
+    private static final int PAGE_SIZE = 50;
+    private static final int CALCULATE_CHUNK_SIZE = 1 << 16;
+    private static final int HTTP_POOL_SIZE = 32;
+
+    // Timed per user action or per chunk, never per record
+    private static final Metrics.Operation CALCULATE_OP = Metrics.operation("calculate");
+    private static final Metrics.Operation CALCULATE_ALL_OP = Metrics.operation("calculate_all");
+    private static final Metrics.Operation RECALCULATE_OP = Metrics.operation("recalculate");
+    // Opening the storage and loading the rates, up to a ready menu or listening server
+    private static final Metrics.Operation STARTUP_OP = Metrics.operation("startup");
+
+    // Usage: AppTester [--memory | --file recordLogFile | --jdbc url user password | --db configFile]
+    //                  [--rates ratesFile] [--http [port]] [--metrics metricsFile [seconds]]
+    //                  [--plan partitions | --work [leaseSeconds] | --calculate-changes
+    //                   | --partition-by-id rangeSize] [--export directory]
+    // Records are kept in tax-records.log unless another storage is chosen.
+    // --db is --jdbc with the url, user and password read from a config file
+    // like tax-db.conf, which also turns on optional migrations such as the
+    // report indexes. The schema is created or migrated on opening (see
+    // SchemaMigrations), so an embedded H2 database needs no setup.
+    // --partition-by-id splits property_tax into id ranges (MySQL only).
+    // With --jdbc, --plan splits the tables for a recalculation by several
+    // processes and --work runs one of them; see PartitionedCalculation.
+    // --calculate-changes recalculates just the rows in the change log.
+    // --export writes the calculated records to gzip-compressed CSV files in
+    // directory, named by category and date (see TaxExporter), and exits.
+    // With --metrics, Prometheus text is written to metricsFile every minute
+    // (or every given number of seconds) and on exit.
+    public static void main(String[] args) {
+        String storage = "--file";
+        List<String> location = List.of(DEFAULT_LOG_FILE);
+        String ratesFile = null;
+        int httpPort = -1;
+        Path metricsFile = null;
+        long metricsMillis = Metrics.DEFAULT_REPORT_MILLIS;
+        int planPartitions = 0;
+        long leaseSeconds = 0;
+        boolean calculateChanges = false;
+        Set<String> schemaOptions = Set.of();
+        long partitionRangeSize = 0;
+        Path exportDirectory = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--memory" -> {
+                    storage = args[i];
+                    location = List.of();
+                }
+                case "--file" -> {
+                    storage = args[i];
+                    location = arguments(args, i + 1, 1);
+                    i += 1;
+                }
+                case "--jdbc" -> {
+                    storage = args[i];
+                    location = arguments(args, i + 1, 3);
+                    i += 3;
+                }
+                case "--db" -> {
+                    storage = "--jdbc";
+                    String file = arguments(args, i + 1, 1).get(0);
+                    Properties config = readConfig(file);
+                    location = databaseConfig(config, file);
+                    schemaOptions = SchemaMigrations.options(config);
+                    i += 1;
+                }
+                case "--rates" -> {
+                    ratesFile = arguments(args, i + 1, 1).get(0);
+                    i += 1;
+                }
+                case "--http" -> {
+                    httpPort = TaxHttpServer.DEFAULT_PORT;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        httpPort = Integer.parseInt(args[++i]);
+                    }
+                }
+                case "--plan" -> {
+                    planPartitions = Integer.parseInt(arguments(args, i + 1, 1).get(0));
+                    i += 1;
+                }
+                case "--work" -> {
+                    leaseSeconds = PartitionedCalculation.DEFAULT_LEASE_SECONDS;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        leaseSeconds = Long.parseLong(args[++i]);
+                    }
+                }
+                case "--calculate-changes" -> calculateChanges = true;
+                case "--export" -> {
+                    exportDirectory = Paths.get(arguments(args, i + 1, 1).get(0));
+                    i += 1;
+                }
+                case "--partition-by-id" -> {
+                    partitionRangeSize = Long.parseLong(arguments(args, i + 1, 1).get(0));
+                    i += 1;
+                }
+                case "--metrics" -> {
+                    metricsFile = Paths.get(arguments(args, i + 1, 1).get(0));
+                    i += 1;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        metricsMillis = Long.parseLong(args[++i]) * 1000;
+                    }
+                }
+                default -> {
+                    System.out.println("Unknown option: " + args[i]);
+                    System.exit(1);
+                }
+            }
         }
-    }
 
-    @Override
-    public void displayDetails() {
-        System.out.printf("%5d %15d %10d %10c %10.2f\n", id, builtUpArea,baseValue,	 location, tax);
-    }
-}
-
-// VehicleTax Class
-class VehicleTax extends Tax {
-    private int registrNo;
-    private String brand;
-    private int velocity;
-    private int seatCapacity;
-    private int type; // 1 for Petrol, 2 for Diesel, 3 for CNG
-    private int price; // Purchase cost
-
-    public VehicleTax(int registrNo, String brand, int velocity, int seatCapacity) {
-        super();
-        this.registrNo = registrNo;
-        this.brand = brand;
-        this.velocity = velocity;
-        this.seatCapacity = seatCapacity;
-    }
-
-    // Add a method to set type and price
-    public void setTypeAndPrice(int type, int price) {
-        this.type = type;
-        this.price = price;
-    }
-
-    public void calculateTax() {
-        switch (type) {
-            case 1 -> this.tax = velocity + seatCapacity + (0.01 * price); // Petrol
-            case 2 -> this.tax = velocity + seatCapacity + (0.11 * price); // Diesel
-            case 3 -> this.tax = velocity + seatCapacity + (0.12 * price); // CNG
-            default -> throw new IllegalArgumentException("Invalid fuel type!");
+        if (metricsFile != null) {
+            Metrics.report(metricsFile, metricsMillis);
         }
-    }
-
-    public int getRegistrationNumber() {
-        return registrNo;
-    }
 
-    @Override
-    public void displayDetails() {
-        String fuelType = switch (type) {
-            case 1 -> "Petrol";
-            case 2 -> "Diesel";
-            case 3 -> "CNG";
-            default -> "Unknown";
-        };
+        if (exportDirectory != null) {
+            TaxRepository repository = open(storage, location, schemaOptions, ConnectionPool.DEFAULT_SIZE);
+            boolean ok = export(repository, exportDirectory);
+            repository.close();
+            dumpMetrics(metricsFile);
+            System.exit(ok ? 0 : 1);
+        }
 
-        System.out.printf(
-            "%5d %15s %10d %10d %10s %10d %10.2f\n", 
-            registrNo, brand, velocity, seatCapacity, fuelType, price, tax
-        );
-    }
-}
+        if (planPartitions > 0 || leaseSeconds > 0 || calculateChanges || partitionRangeSize > 0) {
+            if (!storage.equals("--jdbc")) {
+                System.out.println("--plan, --work, --calculate-changes and --partition-by-id need --jdbc.");
+                System.exit(1);
+            }
+            TaxRepository repository = open(storage, location, schemaOptions, ConnectionPool.DEFAULT_SIZE);
+            loadRates(ratesFile, repository);
+            boolean ok = partitionRangeSize > 0
+                         ? partitionById((JdbcTaxRepository) repository, partitionRangeSize)
+                         : calculateChanges ? calculateChanges((JdbcTaxRepository) repository)
+                         : calculatePartitions((JdbcTaxRepository) repository, planPartitions, leaseSeconds);
+            repository.close();
+            dumpMetrics(metricsFile);
+            System.exit(ok ? 0 : 1);
+        }
 
-// Welcome Class
-class Welcome {
-    public static boolean input() {
-        Scanner sc = new Scanner(System.in);
-        System.out.println("+-------------------------------------+");
-        System.out.println("|   WELCOME TO TAX CALCULATION APP    |");
-        System.out.println("+-------------------------------------+");
-        System.out.print("USERNAME: ");
-        String username = sc.nextLine();
-        System.out.print("PASSWORD: ");
-        String password = sc.nextLine();
-
-        if (username.equals("admin") && password.equals("admin123")) {
-            System.out.println("Authentication Successful\n");
-            return true;
-        } else {
-            System.out.println("Invalid Credentials. Exiting.");
-            return false;
+        if (httpPort >= 0) {
+            long start = System.nanoTime();
+            TaxRepository repository = open(storage, location, schemaOptions, HTTP_POOL_SIZE);
+            loadRates(ratesFile, repository);
+            serve(repository, httpPort, metricsFile, start);
+            return;
         }
-    }
-}
 
-// Main Application Class
-public class AppTester {
-    public static void main(String[] args) {
         Scanner sc = new Scanner(System.in);
-        List<PropertyTax> properties = new ArrayList<>();
-        List<VehicleTax> vehicles = new ArrayList<>();
 
         if (!Welcome.input()) {
             System.exit(0); // Exit if authentication fails
         }
 
+        long start = System.nanoTime();
+        TaxRepository repository = open(storage, location, schemaOptions, ConnectionPool.DEFAULT_SIZE);
+        loadRates(ratesFile, repository);
+        STARTUP_OP.record(start, 0);
+        System.out.printf("Ready in %.2f s\n", (System.nanoTime() - start) / 1_000_000_000.0);
+        // Exit closes the repository itself; this covers Ctrl-C and other ways out
+        Thread flushOnExit = new Thread(() -> {
+            try {
+                repository.flush();
+            } catch (RuntimeException e) {
+                System.out.println("Error: Could not write pending updates: " + e.getMessage());
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(flushOnExit);
         while (true) {
             try {
                 // Main Menu
@@ -152,20 +189,32 @@ public class AppTester {
                 System.out.println("1. Property Tax Menu");
                 System.out.println("2. Vehicle Tax Menu");
                 System.out.println("3. Total Tax");
-                System.out.println("4. Exit");
+                System.out.println("4. Calculate All Pending");
+                System.out.println("5. Reconcile Totals");
+                System.out.println("6. Tax Reports");
+                System.out.println("7. Exit");
                 System.out.print("Select an option: ");
                 int mainChoice = sc.nextInt();
 
                 switch (mainChoice) {
-                    case 1 -> propertyTaxMenu(sc, properties);
-                    case 2 -> vehicleTaxMenu(sc, vehicles);
-                    case 3 -> total(properties, vehicles);
-                    case 4 -> {
+                    case 1 -> propertyTaxMenu(sc, repository);
+                    case 2 -> vehicleTaxMenu(sc, repository);
+                    case 3 -> total(repository);
+                    case 4 -> calculateAllPending(repository);
+                    case 5 -> reconcile(repository);
+                    case 6 -> summaryReport(repository);
+                    case 7 -> {
+                        repository.close(); // if pending updates can't be written, stays in the menu
+                        Runtime.getRuntime().removeShutdownHook(flushOnExit);
                         System.out.println("Exiting the application. Thank you!");
+                        dumpMetrics(metricsFile);
                         System.exit(0);
                     }
                     default -> throw new InvalidInputException("Invalid choice! Please select a valid option.");
                 }
+                repository.flush();
+            } catch (StorageException e) {
+                System.out.println("Error: " + e.getMessage());
             } catch (InputMismatchException e) {
                 System.out.println("Error: Invalid input type. Please enter a valid number.");
                 sc.nextLine(); // Clear invalid input
@@ -175,7 +224,211 @@ public class AppTester {
         }
     }
 
-    private static void propertyTaxMenu(Scanner sc, List<PropertyTax> properties) throws InvalidInputException {
+    private static List<String> arguments(String[] args, int from, int count) {
+        if (from + count > args.length) {
+            System.out.println("Option " + args[from - 1] + " needs " + count + " argument(s).");
+            System.exit(1);
+        }
+        return List.of(args).subList(from, from + count);
+    }
+
+    // A config file of key = value lines; exits if it can't be read
+    private static Properties readConfig(String file) {
+        Properties config = new Properties();
+        try (Reader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            config.load(in);
+        } catch (IOException e) {
+            System.out.println("Error: Cannot read " + file + ": "
+                               + (e instanceof NoSuchFileException ? "no such file" : e.getMessage()));
+            System.exit(1);
+        }
+        return config;
+    }
+
+    // url, user and password from the config; exits if it has no url
+    private static List<String> databaseConfig(Properties config, String file) {
+        String url = config.getProperty("url", "").trim();
+        if (url.isEmpty()) {
+            System.out.println("Error: No url in " + file + ".");
+            System.exit(1);
+        }
+        return List.of(url, config.getProperty("user", "").trim(), config.getProperty("password", "").trim());
+    }
+
+    // Exits if the storage can't be opened
+    private static TaxRepository open(String storage, List<String> location, Set<String> schemaOptions,
+                                      int poolSize) {
+        long start = System.nanoTime();
+        try {
+            TaxRepository repository;
+            switch (storage) {
+                case "--memory" -> repository = new InMemoryTaxRepository();
+                case "--jdbc" -> {
+                    JdbcTaxRepository jdbc = new JdbcTaxRepository(new ConnectionPool(location.get(0), location.get(1),
+                        location.get(2), poolSize, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS,
+                        ConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS));
+                    try {
+                        jdbc.start(schemaOptions);
+                        checkSchema(jdbc);
+                        jdbc.enableWriteBehind(JdbcTaxRepository.WRITE_BEHIND_CAPACITY,
+                                               JdbcTaxRepository.WRITE_BEHIND_DELAY_MILLIS);
+                    } catch (SQLException e) {
+                        jdbc.close();
+                        throw e;
+                    }
+                    repository = jdbc;
+                }
+                default -> {
+                    FileTaxRepository file = FileTaxRepository.open(Paths.get(location.get(0)));
+                    System.out.printf("Loaded %s in %.2f s: %s\n", location.get(0),
+                                      (System.nanoTime() - start) / 1_000_000_000.0, file.replay());
+                    repository = file;
+                }
+            }
+            return repository;
+        } catch (IOException | SQLException e) {
+            System.out.println("Error: Cannot open storage: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    // Rates come from --rates, else the tax_rate table with --jdbc, else tax-rates.conf
+    // if it exists; otherwise, or if they can't be read, the built-in rates apply.
+    // Once loaded they are reloaded in the background whenever the source changes.
+    private static void loadRates(String ratesFile, TaxRepository repository) {
+        RateEngine engine = null;
+        try {
+            if (ratesFile != null) {
+                engine = RateEngine.forFile(Paths.get(ratesFile));
+            } else if (repository instanceof JdbcTaxRepository jdbc) {
+                engine = RateEngine.forTable(jdbc.pool());
+            } else if (Files.exists(Paths.get(DEFAULT_RATES_FILE))) {
+                engine = RateEngine.forFile(Paths.get(DEFAULT_RATES_FILE));
+            } else {
+                return;
+            }
+            TaxRates rates = engine.reload();
+            System.out.println("Loaded " + rates + " from " + engine);
+            engine.watch(RateEngine.DEFAULT_WATCH_MILLIS);
+        } catch (IOException | SQLException e) {
+            System.out.println("Error: Cannot load rates" + (engine == null ? "" : " from " + engine) + ": "
+                               + (e instanceof NoSuchFileException ? "no such file" : e.getMessage())
+                               + ". Using the built-in rates.");
+        }
+    }
+
+    // Non-interactive mode: serves the same operations over HTTP until the process is stopped
+    private static void serve(TaxRepository repository, int port, Path metricsFile, long startNanos) {
+        try {
+            TaxHttpServer server = new TaxHttpServer(repository, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                repository.close();
+                dumpMetrics(metricsFile);
+            }));
+            server.start();
+            STARTUP_OP.record(startNanos, 0);
+            System.out.printf("Tax service listening on port %d, ready in %.2f s\n", server.port(),
+                              (System.nanoTime() - startNanos) / 1_000_000_000.0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            repository.close();
+        }
+    }
+
+    // Non-interactive: plans a partitioned recalculation and/or works on one until it is finished
+    private static boolean calculatePartitions(JdbcTaxRepository repository, int partitions, long leaseSeconds) {
+        PartitionedCalculation calculation = new PartitionedCalculation(repository, Math.max(1, leaseSeconds));
+        try {
+            if (partitions > 0) {
+                List<PartitionedCalculation.Partition> plan = calculation.plan(partitions);
+                System.out.println("Planned " + plan.size() + " partitions");
+            }
+            if (leaseSeconds > 0) {
+                long start = System.nanoTime();
+                int finished = calculation.work();
+                System.out.printf("Worker %s finished %d partitions in %.2f s; %s\n", calculation.owner(), finished,
+                                  (System.nanoTime() - start) / 1_000_000_000.0, calculation.status());
+            }
+            return true;
+        } catch (SQLException | StorageException e) {
+            System.out.println("Error: Partitioned calculation failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean calculateChanges(JdbcTaxRepository repository) {
+        long start = System.nanoTime();
+        try {
+            long pending = repository.pendingChanges();
+            long calculated = repository.calculateChanges(TaxRepository.DEFAULT_BATCH_SIZE);
+            System.out.printf("Calculated %d changed records from %d change log entries in %.2f s\n", calculated,
+                              pending, (System.nanoTime() - start) / 1_000_000_000.0);
+            return true;
+        } catch (StorageException e) {
+            System.out.println("Error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Non-interactive: the day's extract of calculated property and vehicle taxes
+    private static boolean export(TaxRepository repository, Path directory) {
+        TaxExporter exporter = new TaxExporter(Math.max(1, Runtime.getRuntime().availableProcessors() - 2));
+        String date = LocalDate.now().toString();
+        Path properties = directory.resolve("property-tax-" + date + ".csv.gz");
+        Path vehicles = directory.resolve("vehicle-tax-" + date + ".csv.gz");
+        try {
+            Files.createDirectories(directory);
+            System.out.println("Exported " + properties + ": " + exporter.exportProperties(repository, properties));
+            System.out.println("Exported " + vehicles + ": " + exporter.exportVehicles(repository, vehicles));
+            return true;
+        } catch (IOException | StorageException e) {
+            System.out.println("Error: Cannot export to " + directory + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Non-interactive: range-partitions property_tax by id
+    private static boolean partitionById(JdbcTaxRepository repository, long rangeSize) {
+        try {
+            int partitions = SchemaMigrations.partitionPropertiesById(repository.pool(), rangeSize);
+            System.out.println("Partitioned property_tax into " + partitions + " id ranges of " + rangeSize);
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Error: Cannot partition property_tax: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Reports the migrations opening the database applied, and warns about
+    // per-record statements the database would run without an index
+    private static void checkSchema(JdbcTaxRepository repository) {
+        for (SchemaMigrations.Migration migration : repository.migrations()) {
+            System.out.println("Applied schema migration " + migration);
+        }
+        try {
+            for (String warning : repository.checkIndexUse()) {
+                System.out.println("Warning: " + warning + ".");
+            }
+        } catch (SQLException e) {
+            System.out.println("Warning: Cannot check index use: " + e.getMessage());
+        }
+    }
+
+    // The final values, so the file covers the whole run
+    private static void dumpMetrics(Path metricsFile) {
+        if (metricsFile == null) {
+            return;
+        }
+        try {
+            Metrics.dump(metricsFile);
+        } catch (IOException e) {
+            System.out.println("Error: Cannot write metrics to " + metricsFile + ": " + e.getMessage());
+        }
+    }
+
+    private static void propertyTaxMenu(Scanner sc, TaxRepository repository) throws InvalidInputException {
         while (true) {
             System.out.println("\n+-------------------------------------+");
             System.out.println("|   PROPERTY TAX MENU                 |");
@@ -183,7 +436,10 @@ public class AppTester {
             System.out.println("1. Add Property Details");
             System.out.println("2. Calculate Property Tax");
             System.out.println("3. Display All Properties");
-            System.out.println("4. Back to Main Menu");
+            System.out.println("4. Import Properties from CSV");
+            System.out.println("5. Save Properties Table to File");
+            System.out.println("6. Recalculate All Properties");
+            System.out.println("7. Back to Main Menu");
             System.out.print("Select an option: ");
             int choice = sc.nextInt();
 
@@ -197,26 +453,44 @@ public class AppTester {
                     int age = sc.nextInt();
                     System.out.print("Is Located in City? (Y/N): ");
                     char location = sc.next().charAt(0);
-                    properties.add(new PropertyTax(baseValue, builtUpArea, age, location));
-                    System.out.println("Property added successfully!");
+                    PropertyTax property = new PropertyTax(baseValue, builtUpArea, age, location);
+                    repository.addProperty(property);
+                    System.out.println("Property added successfully! Property ID: " + property.getId());
                 }
                 case 2 -> {
                     System.out.print("Enter Property ID to calculate tax: ");
-                    int id = sc.nextInt();
-                    if (id > 0 && id <= properties.size()) {
-                        properties.get(id - 1).calculateTax();
+                    long id = sc.nextLong();
+                    PropertyTax property = repository.findProperty(id);
+                    if (property != null) {
+                        timed(CALCULATE_OP, 1, () -> {
+                            property.calculateTax();
+                            repository.updateTax(property);
+                        });
                         System.out.println("Property tax calculated successfully!");
                     } else {
                         throw new InvalidInputException("Invalid Property ID.");
                     }
                 }
-                case 3 -> {
-                    System.out.println("\n+--------------------------------------------------+");
-                    System.out.printf("%5s %15s %10s %10s %10s\n", "ID", "BuiltupArea", "Baseprice", "In City", "Property Tax");
-                    System.out.println("+--------------------------------------------------+");
-                    properties.forEach(PropertyTax::displayDetails);
+                case 3 -> displayTable(sc, PropertyTax.COLUMNS, (table, pager) -> {
+                    try (Stream<PropertyTax> properties = repository.streamAllProperties()) {
+                        writePropertyTable(table, pager.pages(properties::iterator));
+                    }
+                });
+                case 4 -> importCsv(sc, importer -> importer.importProperties(repository));
+                case 5 -> saveTable(sc, PropertyTax.COLUMNS, table -> {
+                    try (Stream<PropertyTax> properties = repository.streamAllProperties()) {
+                        writePropertyTable(table, properties::iterator);
+                    }
+                });
+                case 6 -> {
+                    System.out.print("Enter Batch Size, rows per transaction (0 for default): ");
+                    int batchSize = sc.nextInt();
+                    if (batchSize < 0) {
+                        throw new InvalidInputException("Invalid Batch Size.");
+                    }
+                    recalculateAllProperties(repository, batchSize == 0 ? TaxRepository.DEFAULT_BATCH_SIZE : batchSize);
                 }
-                case 4 -> {
+                case 7 -> {
                     return; // Back to main menu
                 }
                 default -> throw new InvalidInputException("Invalid choice! Please select a valid option.");
@@ -224,7 +498,7 @@ public class AppTester {
         }
     }
 
-    private static void vehicleTaxMenu(Scanner sc, List<VehicleTax> vehicles) throws InvalidInputException {
+    private static void vehicleTaxMenu(Scanner sc, TaxRepository repository) throws InvalidInputException {
         while (true) {
             System.out.println("\n+-------------------------------------+");
             System.out.println("|   VEHICLE TAX MENU                  |");
@@ -232,7 +506,9 @@ public class AppTester {
             System.out.println("1. Add Vehicle Details");
             System.out.println("2. Calculate Vehicle Tax");
             System.out.println("3. Display All Vehicles");
-            System.out.println("4. Back to Main Menu");
+            System.out.println("4. Import Vehicles from CSV");
+            System.out.println("5. Save Vehicles Table to File");
+            System.out.println("6. Back to Main Menu");
             System.out.print("Select an option: ");
 
             int choice = sc.nextInt();
@@ -240,6 +516,9 @@ public class AppTester {
                 case 1 -> {
                     System.out.println("Enter Registration Number: ");
                     int registrNo = sc.nextInt();
+                    if (repository.findVehicle(registrNo) != null) {
+                        throw new InvalidInputException("Registration Number already exists.");
+                    }
                     sc.nextLine(); // Consume leftover newline
                     System.out.print("Enter Brand: ");
                     String brand = sc.nextLine();
@@ -247,59 +526,319 @@ public class AppTester {
                     int velocity = sc.nextInt();
                     System.out.print("Enter Seat Capacity: ");
                     int seatCapacity = sc.nextInt();
-                    vehicles.add(new VehicleTax(registrNo, brand, velocity, seatCapacity));
+                    boolean added;
+                    try {
+                        added = repository.addVehicle(new VehicleTax(registrNo, brand, velocity, seatCapacity));
+                    } catch (IllegalArgumentException e) { // doesn't fit the repository's storage
+                        throw new InvalidInputException(e.getMessage());
+                    }
+                    if (!added) {
+                        throw new InvalidInputException("Registration Number already exists.");
+                    }
                     System.out.println("Vehicle added successfully!");
                 }
                 
                 case 2 -> {
                     System.out.print("Enter Registration Number to calculate tax: ");
                     int registrNo1 = sc.nextInt();
-                    VehicleTax vehicle = vehicles.stream()
-                        .filter(v -> v.getRegistrationNumber() == registrNo1)
-                        .findFirst()
-                        .orElse(null);
+                    VehicleTax vehicle = repository.findVehicle(registrNo1);
 
                     if (vehicle != null) {
-                        System.out.println("Choose Type: 1. Petrol 2. Diesel 3. CNG");
+                        TaxRates rates = Tax.getRates();
+                        StringBuilder prompt = new StringBuilder("Choose Type:");
+                        for (int fuelType : rates.fuelTypes()) {
+                            prompt.append(' ').append(fuelType).append(". ").append(rates.fuelTypeName(fuelType));
+                        }
+                        System.out.println(prompt);
                         int type = sc.nextInt();
+                        if (!rates.isFuelType(type)) {
+                            throw new InvalidInputException("Invalid Vehicle Type.");
+                        }
                         System.out.print("Enter Purchase Cost: ");
                         int cost = sc.nextInt();
 
                         vehicle.setTypeAndPrice(type, cost);
-                        vehicle.calculateTax();
+                        timed(CALCULATE_OP, 1, () -> {
+                            vehicle.calculateTax();
+                            repository.updateTax(vehicle);
+                        });
                         System.out.println("Vehicle tax calculated successfully!");
                     } else {
                         System.out.println("Invalid Vehicle ID.");
                     }
                 }
                 
-                case 3 -> {
-                	System.out.println("\n+--------------------------------------------------------------------------------------------+");
-                	System.out.printf("%5s %15s %10s %10s %10s %10s %10s\n", "ID", "Brand", "Velocity", "Seats", "Type", "Price", "Tax");
-                	System.out.println("+----------------------------------------------------------------------------------------------+");
-
-                    vehicles.forEach(VehicleTax::displayDetails);
-                }
-                case 4 -> {
+                case 3 -> displayTable(sc, VehicleTax.COLUMNS, (table, pager) -> {
+                    try (Stream<VehicleTax> vehicles = repository.streamAllVehicles()) {
+                        writeVehicleTable(table, pager.pages(vehicles::iterator));
+                    }
+                });
+                case 4 -> importCsv(sc, importer -> importer.importVehicles(repository));
+                case 5 -> saveTable(sc, VehicleTax.COLUMNS, table -> {
+                    try (Stream<VehicleTax> vehicles = repository.streamAllVehicles()) {
+                        writeVehicleTable(table, vehicles::iterator);
+                    }
+                });
+                case 6 -> {
                     return; // Back to main menu
                 }
                 default -> throw new InvalidInputException("Invalid choice! Please select a valid option.");
             }
-            sc.close();
         }
     }
 
+    private interface TableDump {
+        void write(TableWriter table) throws IOException;
+    }
+
+    private interface PagedTableDump {
+        void write(TableWriter table, Pager pager) throws IOException;
+    }
+
+    // Shows a table PAGE_SIZE rows at a time, asking before each further page
+    private static class Pager {
+        private final Scanner sc;
+        private final TableWriter table;
+
+        Pager(Scanner sc, TableWriter table) {
+            this.sc = sc;
+            this.table = table;
+        }
+
+        // The records up to the point where the user stops paging
+        <T> Iterable<T> pages(Iterable<T> records) {
+            return () -> new Iterator<T>() {
+                private final Iterator<T> it = records.iterator();
+                private int shown;
+                private boolean stopped;
+
+                @Override
+                public boolean hasNext() {
+                    if (stopped || !it.hasNext()) {
+                        return false;
+                    }
+                    if (shown > 0 && shown % PAGE_SIZE == 0) {
+                        try {
+                            table.flush();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        System.out.print("Show next page? (Y/N): ");
+                        char answer = sc.next().charAt(0);
+                        stopped = answer != 'Y' && answer != 'y';
+                    }
+                    return !stopped;
+                }
+
+                @Override
+                public T next() {
+                    shown++;
+                    return it.next();
+                }
+            };
+        }
+    }
+
+    static void writePropertyTable(TableWriter table, Iterable<PropertyTax> properties) throws IOException {
+        table.line("\n+--------------------------------------------------+");
+        table.header(PropertyTax.HEADERS);
+        table.line("+--------------------------------------------------+");
+        for (PropertyTax property : properties) {
+            property.writeRow(table);
+        }
+    }
+
+    static void writeVehicleTable(TableWriter table, Iterable<VehicleTax> vehicles) throws IOException {
+        table.line("\n+--------------------------------------------------------------------------------------------+");
+        table.header(VehicleTax.HEADERS);
+        table.line("+----------------------------------------------------------------------------------------------+");
+        for (VehicleTax vehicle : vehicles) {
+            vehicle.writeRow(table);
+        }
+    }
+
+    // One buffered writer for the whole table instead of a printf per row
+    private static void displayTable(Scanner sc, int[] columns, PagedTableDump dump) {
+        try (TableWriter table = TableWriter.toStdout(columns)) {
+            dump.write(table, new Pager(sc, table));
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private static void saveTable(Scanner sc, int[] columns, TableDump dump) {
+        System.out.print("Enter Output File Path: ");
+        Path file = Paths.get(sc.next());
+        long start = System.nanoTime();
+        try (TableWriter table = TableWriter.toFile(file, columns)) {
+            dump.write(table);
+        } catch (IOException e) {
+            System.out.println("Error: Could not write " + file + ": " + e.getMessage());
+            return;
+        }
+        System.out.printf("Table written to %s in %.2f s\n", file, (System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    private interface CsvImport {
+        CsvImporter.Result run(CsvImporter importer) throws IOException;
+    }
+
+    // Rejected lines go to <file>.errors, which is removed again if there are none
+    private static void importCsv(Scanner sc, CsvImport csvImport) throws InvalidInputException {
+        System.out.print("Enter CSV File Path: ");
+        Path file = Paths.get(sc.next());
+        if (!Files.isReadable(file)) {
+            throw new InvalidInputException("Cannot read file " + file);
+        }
+        Path errorFile = Paths.get(file + ".errors");
+        long start = System.nanoTime();
+        try {
+            CsvImporter.Result result;
+            try (Writer errors = Files.newBufferedWriter(errorFile)) {
+                result = csvImport.run(new CsvImporter(file, errors));
+            }
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            System.out.printf("Import finished in %.2f s: %s\n", seconds, result);
+            if (result.rejected == 0) {
+                Files.deleteIfExists(errorFile);
+            } else {
+                System.out.println("Rejected lines are listed in " + errorFile);
+            }
+        } catch (IOException e) {
+            System.out.println("Error: Import failed: " + e.getMessage());
+        }
+    }
+
+    // Streams the pending records, calculates them a chunk at a time on the
+    // calculator's pool and stores each chunk with one batch update
+    private static void calculateAllPending(TaxRepository repository) {
+        long start = System.nanoTime();
+        long propertyCount, vehicleCount;
+        try (Stream<PropertyTax> properties = repository.streamAllProperties();
+             Stream<VehicleTax> vehicles = repository.streamAllVehicles()) {
+            propertyCount = inChunks(properties.filter(Tax::isPending), CALCULATE_CHUNK_SIZE, chunk ->
+                timed(CALCULATE_ALL_OP, chunk.size(),
+                      () -> calculateAndStore(repository, chunk, CALCULATOR::calculatePending)));
+            vehicleCount = inChunks(vehicles.filter(Tax::isPending), CALCULATE_CHUNK_SIZE, chunk ->
+                timed(CALCULATE_ALL_OP, chunk.size(),
+                      () -> calculateAndStore(repository, chunk, CALCULATOR::calculatePending)));
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        System.out.printf("Calculated %d properties and %d vehicles in %.2f ms using %d threads\n",
+                          propertyCount, vehicleCount, millis, CALCULATOR.parallelism());
+    }
+
+    private static void recalculateAllProperties(TaxRepository repository, int batchSize) {
+        long start = System.nanoTime();
+        long rows;
+        try (Stream<PropertyTax> properties = repository.streamAllProperties()) {
+            rows = inChunks(properties, batchSize, chunk -> timed(RECALCULATE_OP, chunk.size(),
+                () -> calculateAndStore(repository, chunk, c -> c.forEach(Tax::calculateTax))));
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("Recalculated %d properties in %.3f s (%.0f rows/sec)\n",
+                          rows, seconds, seconds > 0 ? rows / seconds : 0.0);
+    }
+
+    // Calculates a chunk and stores its taxes with one batch update. If that
+    // fails, the chunk's taxes, and with them the running totals, go back to
+    // what they were, as nothing of the chunk was stored.
+    private static <T extends Tax> void calculateAndStore(TaxRepository repository, List<T> chunk,
+                                                          Consumer<List<T>> calculate) {
+        List<BigDecimal> before = new ArrayList<>(chunk.size());
+        chunk.forEach(record -> before.add(record.isCalculated() ? record.getTaxAmount() : null));
+        try {
+            calculate.accept(chunk);
+            repository.updateTaxBatch(chunk);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < chunk.size(); i++) {
+                if (before.get(i) == null) {
+                    chunk.get(i).retire();
+                } else {
+                    chunk.get(i).restoreTax(before.get(i));
+                }
+            }
+            throw e;
+        }
+    }
+
+    private static void timed(Metrics.Operation op, long rows, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            op.recordError(start);
+            throw e;
+        }
+        op.record(start, rows);
+    }
+
+    // Hands the stream to the action in lists of up to chunkSize; returns the number of records
+    private static <T> long inChunks(Stream<T> records, int chunkSize, Consumer<List<T>> action) {
+        List<T> chunk = new ArrayList<>(Math.min(chunkSize, CALCULATE_CHUNK_SIZE));
+        long count = 0;
+        for (Iterator<T> it = records.iterator(); it.hasNext(); ) {
+            chunk.add(it.next());
+            if (chunk.size() == chunkSize) {
+                action.accept(chunk);
+                count += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            action.accept(chunk);
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    private static void reconcile(TaxRepository repository) {
+        List<RunningTotals.Reconciliation> results = repository.reconcile();
+
+        System.out.println("\n+--------------------------------------------------------------------+");
+        System.out.printf("%10s %10s %10s %15s %15s %6s\n", "Category", "Counted", "Actual", "Counted Tax", "Actual Tax", "OK");
+        System.out.println("+--------------------------------------------------------------------+");
+        for (RunningTotals.Reconciliation result : results) {
+            System.out.printf("%10s %10d %10d %15.2f %15.2f %6s\n", result.category, result.countedRecords,
+                              result.actualRecords, result.countedTax, result.actualTax, result.matches() ? "Yes" : "No");
+        }
+    }
+
+    private static void summaryReport(TaxRepository repository) {
+        List<TaxReports.Row> rows = repository.summary();
+        String report = null;
+        for (TaxReports.Row row : rows) {
+            if (!row.report.equals(report)) {
+                report = row.report;
+                System.out.println("\n+--------------------------------------------------------------+");
+                System.out.printf("| %-60s |\n", report);
+                System.out.println("+--------------------------------------------------------------+");
+                System.out.printf("%-20s %10s %15s %15s\n", "Group", "Count", "Total Tax", "Average Tax");
+            }
+            System.out.printf("%-20s %10d %15.2f %15.2f\n", row.group, row.count, row.total, row.average);
+        }
+        if (rows.isEmpty()) {
+            System.out.println("No records to report.");
+        }
+        if (repository instanceof JdbcTaxRepository jdbc) {
+            System.out.println("\nVehicle cache: " + jdbc.vehicleCacheStats());
+        }
+    }
 
-    private static void total(List<PropertyTax> properties, List<VehicleTax> vehicles) {
-        double totalPropertyTax = properties.stream().mapToDouble(PropertyTax::getTax).sum();
-        double totalVehicleTax = vehicles.stream().mapToDouble(VehicleTax::getTax).sum();
+    // O(1) for the tax: reads the running totals instead of scanning the records
+    private static void total(TaxRepository repository) {
+        RunningTotals totals = repository.totals();
+        BigDecimal totalPropertyTax = totals.tax(RunningTotals.Category.PROPERTY);
+        BigDecimal totalVehicleTax = totals.tax(RunningTotals.Category.VEHICLE);
+        long properties = repository.propertyCount();
+        long vehicles = repository.vehicleCount();
 
         System.out.println("\n+--------------------------------------------------+");
         System.out.printf("%5s %15s %10s %10s\n", "SR No", "Particular", "Quantity", "Tax");
         System.out.println("+--------------------------------------------------+");
-        System.out.printf("%5d %15s %10d %10.2f\n", 1, "Properties", properties.size(), totalPropertyTax);
-        System.out.printf("%5d %15s %10d %10.2f\n", 2, "Vehicles", vehicles.size(), totalVehicleTax);
-        System.out.printf("%5s %15s %10d %10.2f\n", "", "Total", properties.size() + vehicles.size(), totalPropertyTax + totalVehicleTax);
+        System.out.printf("%5d %15s %10d %10.2f\n", 1, "Properties", properties, totalPropertyTax);
+        System.out.printf("%5d %15s %10d %10.2f\n", 2, "Vehicles", vehicles, totalVehicleTax);
+        System.out.printf("%5s %15s %10d %10.2f\n", "", "Total", properties + vehicles, totalPropertyTax.add(totalVehicleTax));
       
     }
     
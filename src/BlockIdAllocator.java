@@ -0,0 +1,82 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Default IdAllocator. Each thread reserves a block of ids from a shared
+// AtomicLong and hands them out locally, so creating records only touches
+// shared state once per block. A single thread still gets 1, 2, 3, ...;
+// with several threads, ids are unique but interleave block by block.
+//
+// A thread that creates only a record or two still reserves a whole block,
+// so short-lived threads, e.g. a virtual thread per HTTP request, would skip
+// most of the ids. They should take ids from shared() instead.
+class BlockIdAllocator implements IdAllocator {
+    static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final AtomicLong nextBlock;
+    private final int blockSize;
+    private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[] { 0, 0 }); // { next, end }
+    private final IdAllocator shared = new SharedBlock();
+
+    BlockIdAllocator() {
+        this(1, DEFAULT_BLOCK_SIZE);
+    }
+
+    BlockIdAllocator(long firstId, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive.");
+        }
+        this.nextBlock = new AtomicLong(firstId);
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public long nextId() {
+        return next(block.get());
+    }
+
+    // Blocks already reserved by other threads are not affected
+    @Override
+    public void advancePast(long id) {
+        advance(block.get(), id);
+    }
+
+    // Ids from one block that all threads share under a lock, reserved from
+    // the same counter, so they never collide with the per-thread blocks
+    IdAllocator shared() {
+        return shared;
+    }
+
+    private long next(long[] range) {
+        if (range[0] == range[1]) {
+            long start = nextBlock.getAndAdd(blockSize);
+            if (start < 0 || start + blockSize < 0) {
+                throw new IllegalStateException("Record ids exhausted.");
+            }
+            range[0] = start;
+            range[1] = start + blockSize;
+        }
+        return range[0]++;
+    }
+
+    private void advance(long[] range, long id) {
+        nextBlock.accumulateAndGet(id + 1, Math::max);
+        if (range[1] <= id + 1) {
+            range[0] = range[1]; // drop the stale block
+        } else if (range[0] <= id) {
+            range[0] = id + 1;
+        }
+    }
+
+    private final class SharedBlock implements IdAllocator {
+        private final long[] range = { 0, 0 };
+
+        @Override
+        public synchronized long nextId() {
+            return next(range);
+        }
+
+        @Override
+        public synchronized void advancePast(long id) {
+            advance(range, id);
+        }
+    }
+}
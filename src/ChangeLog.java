@@ -0,0 +1,100 @@
+import java.sql.*;
+import java.util.*;
+
+// The tax_change table (see SchemaMigrations): one entry per row whose inputs changed and whose tax
+// therefore needs calculating, in the order of the changes. JdbcTaxRepository
+// adds an entry in the same transaction as each insert and each update that
+// changes a vehicle's type or price (the only inputs it updates), and
+// calculateChanges() removes entries in the same transaction as it stores
+// the recalculated taxes. Other programs that change base values, areas,
+// ages, locations, types or prices should add entries too.
+//
+// The log itself is the watermark: entries are removed once handled rather
+// than read past a stored sequence number, so a change whose transaction
+// commits after a later one's is still seen.
+final class ChangeLog {
+    private static final String INSERT_CHANGE = "INSERT INTO tax_change (kind, record_key) VALUES (?, ?)";
+    // An entry for the vehicle if the type or price about to be written differs from the stored one
+    private static final String INSERT_VEHICLE_INPUT_CHANGE =
+        "INSERT INTO tax_change (kind, record_key) SELECT 'VEHICLE', registration_number FROM vehicle_tax"
+        + " WHERE registration_number = ? AND (COALESCE(type, -1) <> ? OR COALESCE(price, -1) <> ?)";
+    private static final String SELECT_CHANGES = "SELECT seq, kind, record_key FROM tax_change ORDER BY seq LIMIT ?";
+    private static final String DELETE_CHANGE = "DELETE FROM tax_change WHERE seq = ?";
+    private static final String COUNT_CHANGES = "SELECT COUNT(*) FROM tax_change";
+
+    static class Change {
+        final long seq;
+        final RunningTotals.Category kind;
+        final long key;
+
+        Change(long seq, RunningTotals.Category kind, long key) {
+            this.seq = seq;
+            this.kind = kind;
+            this.key = key;
+        }
+    }
+
+    private ChangeLog() {
+    }
+
+    // The key of a record's row: the id of a property, the registration number of a vehicle
+    static long key(Tax record) {
+        return record instanceof VehicleTax vehicle ? vehicle.getRegistrationNumber() : record.getId();
+    }
+
+    // Adds entries within the caller's transaction
+    static void addAll(PooledConnection conn, Collection<? extends Tax> records) throws SQLException {
+        PreparedStatement stmt = conn.prepare(INSERT_CHANGE);
+        for (Tax record : records) {
+            stmt.setString(1, record.category().name());
+            stmt.setLong(2, key(record));
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+    }
+
+    // Adds entries, within the caller's transaction and before it updates
+    // them, for the vehicles whose type or price it is about to change
+    static void addChangedVehicles(PooledConnection conn, List<VehicleTax> vehicles) throws SQLException {
+        PreparedStatement stmt = conn.prepare(INSERT_VEHICLE_INPUT_CHANGE);
+        for (VehicleTax vehicle : vehicles) {
+            stmt.setInt(1, vehicle.getRegistrationNumber());
+            stmt.setInt(2, vehicle.getType());
+            stmt.setInt(3, vehicle.getPrice());
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+    }
+
+    // The oldest entries, up to limit
+    static List<Change> next(PooledConnection conn, int limit) throws SQLException {
+        List<Change> changes = new ArrayList<>();
+        PreparedStatement stmt = conn.prepare(SELECT_CHANGES);
+        stmt.setInt(1, limit);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                changes.add(new Change(rs.getLong(1), RunningTotals.Category.valueOf(rs.getString(2)), rs.getLong(3)));
+            }
+        }
+        return changes;
+    }
+
+    // Removes handled entries within the caller's transaction. By sequence
+    // number, so entries added meanwhile are kept even if they sort earlier.
+    static void removeAll(PooledConnection conn, List<Change> changes) throws SQLException {
+        PreparedStatement stmt = conn.prepare(DELETE_CHANGE);
+        for (Change change : changes) {
+            stmt.setLong(1, change.seq);
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+    }
+
+    static long count(ConnectionPool pool) throws SQLException {
+        try (PooledConnection conn = pool.borrow();
+             ResultSet rs = conn.prepare(COUNT_CHANGES).executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
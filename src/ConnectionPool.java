@@ -0,0 +1,162 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Fixed-size JDBC connection pool.
+// Connections are validated when borrowed and closed once they have been idle
+// longer than the idle timeout; each one keeps its own prepared statement cache.
+class ConnectionPool implements AutoCloseable {
+    static final int DEFAULT_SIZE = 4;
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000L;
+    static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30 * 1000L;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int size;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    ConnectionPool(String url, String user, String password) {
+        this(url, user, password, DEFAULT_SIZE, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_BORROW_TIMEOUT_MILLIS);
+    }
+
+    ConnectionPool(String url, String user, String password, int size,
+                   long idleTimeoutMillis, long borrowTimeoutMillis) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive.");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.size = size;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(size, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    int size() {
+        return size;
+    }
+
+    synchronized int idleCount() {
+        return idle.size();
+    }
+
+    // Blocks until a connection is free or the borrow timeout expires.
+    PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a pooled connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a pooled connection.", e);
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = pollIdle()) != null) {
+                if (!isExpired(pooled, System.currentTimeMillis()) && isValid(pooled)) {
+                    return pooled;
+                }
+                pooled.closePhysical();
+            }
+            return new PooledConnection(this, DriverManager.getConnection(url, user, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    void release(PooledConnection pooled) {
+        try {
+            if (closed || !reset(pooled)) {
+                pooled.closePhysical();
+                return;
+            }
+            pooled.touch();
+            synchronized (this) {
+                idle.addFirst(pooled); // most recently used first, so cold ones age out
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                if (!isExpired(pooled, now)) {
+                    break;
+                }
+                it.remove();
+                expired.add(pooled);
+            }
+        }
+        expired.forEach(PooledConnection::closePhysical);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        List<PooledConnection> remaining;
+        synchronized (this) {
+            remaining = new ArrayList<>(idle);
+            idle.clear();
+        }
+        remaining.forEach(PooledConnection::closePhysical);
+    }
+
+    private synchronized PooledConnection pollIdle() {
+        return idle.pollFirst();
+    }
+
+    private boolean isExpired(PooledConnection pooled, long now) {
+        return now - pooled.lastUsedMillis() > idleTimeoutMillis;
+    }
+
+    private static boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.connection().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Leaves the connection the way a fresh one would be handed out.
+    private static boolean reset(PooledConnection pooled) {
+        try {
+            Connection conn = pooled.connection();
+            if (conn.isClosed()) {
+                return false;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+}
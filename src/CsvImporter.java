@@ -0,0 +1,348 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Streams property or vehicle records from a CSV file into a TaxRepository.
+//
+// Property rows: baseValue,builtUpArea,age,location
+// Vehicle rows:  registrNo,brand,velocity,seatCapacity[,type,price]
+//
+// The file is read through one reusable buffer and numbers are parsed straight
+// from the bytes, so memory use does not grow with the file. Bad lines are
+// written to the error report and skipped. Blank lines, lines starting with '#'
+// and a non-numeric header line are ignored. Parsed records are stored with
+// saveAll() a batch at a time; ones it rejects as duplicates are reported by
+// line number once their batch has been saved.
+class CsvImporter {
+    static final int BUFFER_SIZE = 1 << 20; // also the longest line accepted
+    static final int SAVE_BATCH_SIZE = 10_000;
+    private static final int MAX_FIELDS = 8;
+    private static final int BRAND_CACHE_SIZE = 1024;
+
+    static class Result {
+        long lines;
+        long imported;
+        long rejected;
+
+        @Override
+        public String toString() {
+            return String.format("%d lines read, %d imported, %d rejected", lines, imported, rejected);
+        }
+    }
+
+    // Thrown for one bad line; the import carries on with the next
+    private static class LineException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        LineException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private interface LineHandler {
+        void accept() throws LineException, IOException;
+    }
+
+    private final Path file;
+    private final Writer errors;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] bytes = buffer.array();
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private int fieldCount;
+    private final String[] brandCache = new String[BRAND_CACHE_SIZE];
+    private final List<Tax> batch = new ArrayList<>(SAVE_BATCH_SIZE);
+    private final long[] batchLines = new long[SAVE_BATCH_SIZE];
+    private TaxRepository repository;
+    private Result result;
+
+    CsvImporter(Path file, Writer errors) {
+        this.file = file;
+        this.errors = errors;
+    }
+
+    Result importProperties(TaxRepository repository) throws IOException {
+        return read(repository, () -> {
+            expectFields(4, 4);
+            int baseValue = intField(0);
+            int builtUpArea = intField(1);
+            int age = intField(2);
+            char location = charField(3);
+            if (location != 'Y' && location != 'y' && location != 'N' && location != 'n') {
+                throw new LineException("location must be Y or N");
+            }
+            save(new PropertyTax(baseValue, builtUpArea, age, location));
+        });
+    }
+
+    Result importVehicles(TaxRepository repository) throws IOException {
+        return read(repository, () -> {
+            expectFields(4, 6);
+            if (fieldCount == 5) {
+                throw new LineException("type and price must be given together");
+            }
+            int registrNo = intField(0);
+            String brand = brandField(1);
+            VehicleTax vehicle = new VehicleTax(registrNo, brand, intField(2), intField(3));
+            if (fieldCount == 6) {
+                int type = intField(4);
+                if (!Tax.getRates().isFuelType(type)) {
+                    throw new LineException("type " + type + " has no fuel rate");
+                }
+                vehicle.setTypeAndPrice(type, intField(5));
+            }
+            try {
+                repository.checkFits(vehicle); // saveAll() would reject the whole batch
+            } catch (IllegalArgumentException e) {
+                throw new LineException(e.getMessage());
+            }
+            save(vehicle);
+        });
+    }
+
+    private Result read(TaxRepository repository, LineHandler handler) throws IOException {
+        Result result = new Result();
+        this.repository = repository;
+        this.result = result;
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                int limit = buffer.position();
+                int lineStart = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (bytes[i] == '\n') {
+                        processLine(lineStart, i, handler, result);
+                        lineStart = i + 1;
+                    }
+                }
+                if (eof && lineStart < limit) {
+                    processLine(lineStart, limit, handler, result); // last line without a newline
+                    lineStart = limit;
+                } else if (lineStart == 0 && limit == bytes.length) {
+                    result.lines++;
+                    result.rejected++;
+                    report(result.lines, "line longer than " + BUFFER_SIZE + " bytes");
+                    lineStart = skipToNextLine(channel);
+                    limit = buffer.position();
+                }
+                // Move the unfinished line to the front and read more after it
+                System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+                buffer.position(limit - lineStart);
+            }
+        }
+        saveBatch();
+        errors.flush();
+        return result;
+    }
+
+    private void processLine(int start, int end, LineHandler handler, Result result) throws IOException {
+        result.lines++;
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        int first = skipSpaces(start, end);
+        if (first == end || bytes[first] == '#') {
+            return;
+        }
+        try {
+            split(start, end);
+            if (result.lines == 1 && !isNumeric(0)) {
+                return; // header
+            }
+            handler.accept();
+            result.imported++;
+        } catch (LineException e) {
+            result.rejected++;
+            report(result.lines, e.getMessage());
+        }
+    }
+
+    // Queues a parsed record; the batch is saved when full
+    private void save(Tax record) throws IOException {
+        batchLines[batch.size()] = result.lines;
+        batch.add(record);
+        if (batch.size() == SAVE_BATCH_SIZE) {
+            saveBatch();
+        }
+    }
+
+    private void saveBatch() throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Tax> rejected = repository.saveAll(batch);
+        if (!rejected.isEmpty()) {
+            Set<Tax> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+            duplicates.addAll(rejected);
+            for (int i = 0; i < batch.size(); i++) {
+                Tax record = batch.get(i);
+                if (duplicates.contains(record)) {
+                    result.imported--;
+                    result.rejected++;
+                    report(batchLines[i], record instanceof VehicleTax vehicle
+                        ? "duplicate registration number " + vehicle.getRegistrationNumber()
+                        : "duplicate id " + record.getId());
+                }
+            }
+        }
+        batch.clear();
+    }
+
+    // Discards the rest of an over-long line; returns where the next line starts
+    private int skipToNextLine(FileChannel channel) throws IOException {
+        while (true) {
+            buffer.clear();
+            if (channel.read(buffer) < 0) {
+                buffer.position(0);
+                return 0;
+            }
+            int end = buffer.position();
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    return i + 1;
+                }
+            }
+        }
+    }
+
+    private void split(int start, int end) throws LineException {
+        fieldCount = 0;
+        int i = start;
+        while (true) {
+            if (fieldCount == MAX_FIELDS) {
+                throw new LineException("too many fields");
+            }
+            int from = skipSpaces(i, end);
+            int to;
+            if (from < end && bytes[from] == '"') {
+                from++;
+                to = from;
+                while (to < end && bytes[to] != '"') {
+                    to++;
+                }
+                if (to == end) {
+                    throw new LineException("unterminated quote");
+                }
+                i = to + 1;
+                while (i < end && bytes[i] != ',') {
+                    i++;
+                }
+            } else {
+                to = from;
+                while (to < end && bytes[to] != ',') {
+                    to++;
+                }
+                i = to;
+                while (to > from && bytes[to - 1] == ' ') {
+                    to--;
+                }
+            }
+            fieldStart[fieldCount] = from;
+            fieldEnd[fieldCount] = to;
+            fieldCount++;
+            if (i >= end) {
+                return;
+            }
+            i++; // skip the comma
+        }
+    }
+
+    private void expectFields(int min, int max) throws LineException {
+        if (fieldCount < min || fieldCount > max) {
+            throw new LineException("expected " + (min == max ? min : min + " to " + max)
+                                    + " fields but found " + fieldCount);
+        }
+    }
+
+    private boolean isNumeric(int field) {
+        int i = fieldStart[field];
+        if (i < fieldEnd[field] && bytes[i] == '-') {
+            i++;
+        }
+        return i < fieldEnd[field] && bytes[i] >= '0' && bytes[i] <= '9';
+    }
+
+    private int intField(int field) throws LineException {
+        int i = fieldStart[field], end = fieldEnd[field];
+        boolean negative = i < end && bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end) {
+            throw new LineException("field " + (field + 1) + " is not a number");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new LineException("field " + (field + 1) + " is not a number");
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new LineException("field " + (field + 1) + " is out of range");
+            }
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (value > Integer.MAX_VALUE) {
+            throw new LineException("field " + (field + 1) + " is out of range");
+        }
+        return (int) value;
+    }
+
+    private char charField(int field) throws LineException {
+        if (fieldEnd[field] - fieldStart[field] != 1) {
+            throw new LineException("field " + (field + 1) + " must be a single character");
+        }
+        return (char) bytes[fieldStart[field]];
+    }
+
+    // Brands repeat across millions of rows, so equal ones share one String
+    private String brandField(int field) throws LineException {
+        int start = fieldStart[field], length = fieldEnd[field] - start;
+        if (length == 0) {
+            throw new LineException("brand is empty");
+        }
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (BRAND_CACHE_SIZE - 1);
+        String cached = brandCache[slot];
+        if (cached != null && matches(cached, start, length)) {
+            return cached;
+        }
+        String brand = new String(bytes, start, length, StandardCharsets.UTF_8);
+        brandCache[slot] = brand;
+        return brand;
+    }
+
+    private boolean matches(String cached, int start, int length) {
+        if (cached.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached.charAt(i) != bytes[start + i]) {
+                return false; // also rejects multi-byte UTF-8, which then just isn't shared
+            }
+        }
+        return true;
+    }
+
+    private int skipSpaces(int i, int end) {
+        while (i < end && bytes[i] == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private void report(long line, String message) throws IOException {
+        errors.write("line " + line + ": " + message + System.lineSeparator());
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+// The in-memory repository made durable with a RecordLog: every add and every
+// tax update appends the record's new state, and opening the file replays it.
+// flush() compacts the log once most of it is superseded records, otherwise
+// forces it to disk.
+class FileTaxRepository extends InMemoryTaxRepository {
+    private final RecordLog log;
+    private final RecordLog.Replay replay;
+
+    private FileTaxRepository(RecordLog log, PropertyRegistry properties, VehicleRegistry vehicles,
+                              RecordLog.Replay replay) {
+        super(properties, vehicles);
+        this.log = log;
+        this.replay = replay;
+    }
+
+    static FileTaxRepository open(Path file) throws IOException {
+        RecordLog log = new RecordLog(file);
+        PropertyRegistry properties = new PropertyRegistry();
+        VehicleRegistry vehicles = new VehicleRegistry();
+        RecordLog.Replay replay = log.replay(properties, vehicles);
+        if (log.needsUpgrade()) {
+            log.compact(properties, vehicles);
+        }
+        return new FileTaxRepository(log, properties, vehicles, replay);
+    }
+
+    // What was loaded when the file was opened
+    RecordLog.Replay replay() {
+        return replay;
+    }
+
+    @Override
+    public synchronized void addProperty(PropertyTax property) {
+        super.addProperty(property);
+        append(List.of(property));
+    }
+
+    @Override
+    public synchronized boolean addVehicle(VehicleTax vehicle) {
+        if (!super.addVehicle(vehicle)) {
+            return false;
+        }
+        append(List.of(vehicle));
+        return true;
+    }
+
+    @Override
+    public synchronized void updateTax(Tax record) {
+        append(List.of(record));
+    }
+
+    @Override
+    public synchronized List<Tax> saveAll(Collection<? extends Tax> records) {
+        List<Tax> rejected = super.saveAll(records); // which checks they fit first
+        if (rejected.isEmpty()) {
+            append(records);
+        } else {
+            Set<Tax> skip = Collections.newSetFromMap(new IdentityHashMap<>());
+            skip.addAll(rejected);
+            List<Tax> accepted = new ArrayList<>(records.size() - rejected.size());
+            for (Tax record : records) {
+                if (!skip.contains(record)) {
+                    accepted.add(record);
+                }
+            }
+            append(accepted);
+        }
+        return rejected;
+    }
+
+    @Override
+    public synchronized void updateTaxBatch(Collection<? extends Tax> records) {
+        append(records);
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            if (log.shouldCompact(properties.size() + vehicles.size())) {
+                log.compact(properties, vehicles);
+            } else {
+                log.sync();
+            }
+        } catch (IOException e) {
+            throw new StorageException("Could not write the record log: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            log.close();
+        } catch (IOException e) {
+            throw new StorageException("Could not close the record log: " + e.getMessage(), e);
+        }
+    }
+
+    // Checked before a record is stored, so a failed append can't leave it only in memory
+    @Override
+    public void checkFits(Tax record) {
+        super.checkFits(record);
+        if (record instanceof VehicleTax vehicle
+                && vehicle.getBrand().getBytes(StandardCharsets.UTF_8).length > RecordLog.MAX_BRAND_BYTES) {
+            throw new IllegalArgumentException("Brand must be at most " + RecordLog.MAX_BRAND_BYTES + " bytes.");
+        }
+    }
+
+    private void append(Collection<? extends Tax> records) {
+        try {
+            log.appendAll(records);
+        } catch (IOException e) {
+            throw new StorageException("Could not write the record log: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+// Source of record ids for Tax. Implementations must be safe to call from
+// several threads and must never hand out the same id twice.
+interface IdAllocator {
+    long nextId();
+
+    // Makes sure ids handed out from now on are greater than the given id.
+    // Call it before records are created, e.g. after reloading saved records.
+    void advancePast(long id);
+}
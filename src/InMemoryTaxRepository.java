@@ -0,0 +1,135 @@
+import java.util.*;
+
+// Keeps every record in the registries; nothing survives the process.
+// The records handed out are the stored ones, so updateTax() has nothing left
+// to write. All access goes through this object's lock.
+class InMemoryTaxRepository implements TaxRepository {
+    protected final PropertyRegistry properties;
+    protected final VehicleRegistry vehicles;
+    private final RunningTotals totals = new RunningTotals();
+
+    InMemoryTaxRepository() {
+        this(new PropertyRegistry(), new VehicleRegistry());
+    }
+
+    // Takes over records loaded elsewhere, e.g. replayed from a RecordLog
+    protected InMemoryTaxRepository(PropertyRegistry properties, VehicleRegistry vehicles) {
+        this.properties = properties;
+        this.vehicles = vehicles;
+        properties.forEach(this::track);
+        vehicles.forEach(this::track);
+    }
+
+    @Override
+    public synchronized void addProperty(PropertyTax property) {
+        if (!properties.add(property)) {
+            throw new IllegalArgumentException("Property ID " + property.getId() + " already exists.");
+        }
+        track(property);
+    }
+
+    @Override
+    public synchronized boolean addVehicle(VehicleTax vehicle) {
+        checkFits(vehicle);
+        if (!vehicles.add(vehicle)) {
+            return false;
+        }
+        track(vehicle);
+        return true;
+    }
+
+    @Override
+    public synchronized PropertyTax findProperty(long id) {
+        return properties.get(id);
+    }
+
+    @Override
+    public synchronized VehicleTax findVehicle(int registrNo) {
+        return vehicles.get(registrNo);
+    }
+
+    // Under the lock, as the record calculated is the stored one
+    @Override
+    public synchronized PropertyTax calculateProperty(long id) {
+        return TaxRepository.super.calculateProperty(id);
+    }
+
+    @Override
+    public synchronized VehicleTax calculateVehicle(int registrNo, int type, int price) {
+        return TaxRepository.super.calculateVehicle(registrNo, type, price);
+    }
+
+    @Override
+    public void updateTax(Tax record) {
+        // The record is the stored one and its totals are already applied
+    }
+
+    @Override
+    public synchronized List<Tax> saveAll(Collection<? extends Tax> records) {
+        records.forEach(this::checkFits);
+        List<Tax> rejected = new ArrayList<>();
+        for (Tax record : records) {
+            boolean added = record instanceof PropertyTax property ? properties.add(property)
+                                                                    : vehicles.add((VehicleTax) record);
+            if (added) {
+                track(record);
+            } else {
+                rejected.add(record);
+            }
+        }
+        return rejected;
+    }
+
+    @Override
+    public void updateTaxBatch(Collection<? extends Tax> records) {
+        // Same as updateTax()
+    }
+
+    @Override
+    public synchronized List<PropertyTax> propertyPage(long afterId, int limit) {
+        return page(properties.asList(), properties.indexOf(afterId), limit);
+    }
+
+    @Override
+    public synchronized List<VehicleTax> vehiclePage(int afterRegistrNo, int limit) {
+        return page(vehicles.asList(), vehicles.indexOf(afterRegistrNo), limit);
+    }
+
+    @Override
+    public synchronized long propertyCount() {
+        return properties.size();
+    }
+
+    @Override
+    public synchronized long vehicleCount() {
+        return vehicles.size();
+    }
+
+    @Override
+    public RunningTotals totals() {
+        return totals;
+    }
+
+    @Override
+    public synchronized List<RunningTotals.Reconciliation> reconcile() {
+        return List.of(totals.reconcile(RunningTotals.Category.PROPERTY, properties),
+                       totals.reconcile(RunningTotals.Category.VEHICLE, vehicles));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Counts the record's current tax and attaches it to the totals
+    private void track(Tax record) {
+        totals.add(record);
+        record.track(totals);
+    }
+
+    // A copy, so callers can walk it without holding the lock
+    private static <T> List<T> page(List<T> records, int after, int limit) {
+        int from = after + 1; // indexOf() is -1 when starting from the beginning
+        int to = Math.min(records.size(), from + Math.min(limit, MAX_PAGE_SIZE));
+        return from >= to ? List.of() : new ArrayList<>(records.subList(from, to));
+    }
+}
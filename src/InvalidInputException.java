@@ -0,0 +1,8 @@
+// Custom Exceptions
+class InvalidInputException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public InvalidInputException(String message) {
+        super(message);
+    }
+}
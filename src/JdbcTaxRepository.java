@@ -0,0 +1,979 @@
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+
+// TaxRepository over the property_tax and vehicle_tax tables.
+// Each call borrows its own pooled connection, so it is safe to use from
+// several threads. Bulk calls send JDBC batches, one transaction per batch.
+// Vehicles found by registration number are cached until this repository
+// updates them or the cache's time to live runs out; like the reports,
+// writes made by other processes are only seen after that.
+//
+// With enableWriteBehind(), updateTax() queues the row and returns; a
+// background thread writes queued rows in batches. Finds and pages return
+// the queued values, and the reports, flush() and close() wait for the
+// queue to drain first.
+//
+// Every insert, and every update that changes a vehicle's type or price, is
+// logged in the ChangeLog in the same transaction, so calculateChanges() can
+// recalculate just the rows changed since it last ran.
+//
+// saveAll() sends multi-row INSERT statements, ROWS_PER_INSERT rows each,
+// one transaction per TRANSACTION_SIZE rows; setInsertSizes() changes both.
+// A transaction that fails on a lost connection, a deadlock or a
+// serialization failure is retried on another connection. Records carry the
+// keys they are stored under before they are inserted (ids come from the
+// id sequence), so a retry of a transaction that did commit finds the rows
+// already there and counts them as inserted rather than as duplicates.
+class JdbcTaxRepository implements TaxRepository {
+    static final int VEHICLE_CACHE_SIZE = 10_000;
+    static final long VEHICLE_CACHE_TTL_MILLIS = 60_000;
+    static final int WRITE_BEHIND_CAPACITY = 10_000;
+    static final long WRITE_BEHIND_DELAY_MILLIS = 100;
+    static final int TRANSACTION_SIZE = DEFAULT_BATCH_SIZE;
+    static final int ROWS_PER_INSERT = 100;
+    static final int MAX_ROWS_PER_INSERT = 1000; // keeps a statement well below 65535 parameters
+    static final int INSERT_ATTEMPTS = 3;
+    static final long INSERT_RETRY_DELAY_MILLIS = 200;
+    static final int MAX_BRAND_LENGTH = 64; // vehicle_tax.brand is VARCHAR(64)
+
+    private static final String PROPERTY_COLUMNS = "property_tax (id, base_value, built_up_area, age, location, tax)";
+    private static final int PROPERTY_COLUMN_COUNT = 6;
+    private static final String INSERT_PROPERTY = insertSql(PROPERTY_COLUMNS, PROPERTY_COLUMN_COUNT, 1);
+    private static final String SELECT_PROPERTY =
+        "SELECT id, base_value, built_up_area, age, location, tax FROM property_tax WHERE id = ?";
+    private static final String UPDATE_PROPERTY_TAX = "UPDATE property_tax SET tax = ? WHERE id = ?";
+    private static final String SELECT_PROPERTY_PAGE =
+        "SELECT id, base_value, built_up_area, age, location, tax FROM property_tax WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String VEHICLE_COLUMNS =
+        "vehicle_tax (registration_number, brand, velocity, seat_capacity, type, price, tax)";
+    private static final int VEHICLE_COLUMN_COUNT = 7;
+    private static final String INSERT_VEHICLE = insertSql(VEHICLE_COLUMNS, VEHICLE_COLUMN_COUNT, 1);
+    private static final String SELECT_VEHICLE =
+        "SELECT registration_number, brand, velocity, seat_capacity, type, price, tax FROM vehicle_tax"
+        + " WHERE registration_number = ?";
+    private static final String UPDATE_VEHICLE_TAX =
+        "UPDATE vehicle_tax SET type = ?, price = ?, tax = ? WHERE registration_number = ?";
+    private static final String SELECT_VEHICLE_PAGE =
+        "SELECT registration_number, brand, velocity, seat_capacity, type, price, tax FROM vehicle_tax"
+        + " WHERE registration_number > ? ORDER BY registration_number LIMIT ?";
+    // The rows with change log entries from seq ? to ?
+    private static final String SELECT_CHANGED_PROPERTIES =
+        "SELECT id, base_value, built_up_area, age, location, tax FROM property_tax WHERE id IN"
+        + " (SELECT record_key FROM tax_change WHERE kind = 'PROPERTY' AND seq BETWEEN ? AND ?)";
+    private static final String SELECT_CHANGED_VEHICLES =
+        "SELECT registration_number, brand, velocity, seat_capacity, type, price, tax FROM vehicle_tax"
+        + " WHERE registration_number IN"
+        + " (SELECT record_key FROM tax_change WHERE kind = 'VEHICLE' AND seq BETWEEN ? AND ?)";
+
+    // One per statement; a batch counts as one execution with its rows
+    private static final Metrics.Operation INSERT_PROPERTY_OP = Metrics.operation("sql.insert_property");
+    private static final Metrics.Operation SELECT_PROPERTY_OP = Metrics.operation("sql.select_property");
+    private static final Metrics.Operation UPDATE_PROPERTY_TAX_OP = Metrics.operation("sql.update_property_tax");
+    private static final Metrics.Operation SELECT_PROPERTY_PAGE_OP = Metrics.operation("sql.select_property_page");
+    private static final Metrics.Operation INSERT_VEHICLE_OP = Metrics.operation("sql.insert_vehicle");
+    private static final Metrics.Operation SELECT_VEHICLE_OP = Metrics.operation("sql.select_vehicle");
+    private static final Metrics.Operation UPDATE_VEHICLE_TAX_OP = Metrics.operation("sql.update_vehicle_tax");
+    private static final Metrics.Operation SELECT_VEHICLE_PAGE_OP = Metrics.operation("sql.select_vehicle_page");
+    private static final Metrics.Operation CALCULATE_CHANGES_OP = Metrics.operation("calculate_changes");
+
+    // Sets the parameters of one row of a batch
+    private interface Binder<T extends Tax> {
+        void bind(PreparedStatement stmt, T record) throws SQLException;
+    }
+
+    // Sets the parameters of one row of an insert, starting at index
+    private interface RowBinder<T extends Tax> {
+        void bind(PreparedStatement stmt, int index, T record) throws SQLException;
+    }
+
+    private interface RowReader<T extends Tax> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    // Runs in the transaction of a batch update, before it
+    private interface BatchStep<T extends Tax> {
+        void run(PooledConnection conn, List<T> records) throws SQLException;
+    }
+
+    private final ConnectionPool pool;
+    private final TaxReports reports;
+    private final SequenceIdAllocator propertyIds;
+    // Untracked copies of stored rows; callers get their own copy to change
+    private final TinyLfuCache<Integer, VehicleTax> vehicleCache =
+        new TinyLfuCache<>(VEHICLE_CACHE_SIZE, VEHICLE_CACHE_TTL_MILLIS);
+    // Untracked copies of rows to write, by category and id; null to write straight away
+    private volatile WriteBehindQueue<Map.Entry<RunningTotals.Category, Long>, Tax> writeBehind;
+    private volatile int transactionSize = TRANSACTION_SIZE;
+    private volatile int rowsPerInsert = ROWS_PER_INSERT;
+    private List<SchemaMigrations.Migration> migrations = List.of();
+    private Set<String> schemaOptions = Set.of();
+
+    JdbcTaxRepository(ConnectionPool pool) {
+        this.pool = pool;
+        this.reports = new TaxReports(pool);
+        this.propertyIds = new SequenceIdAllocator(pool, "property_tax", SequenceIdAllocator.DEFAULT_RANGE_SIZE);
+        Metrics.gauge("vehicle_cache_hits", () -> vehicleCache.stats().hits);
+        Metrics.gauge("vehicle_cache_misses", () -> vehicleCache.stats().misses);
+        Metrics.gauge("vehicle_cache_evictions", () -> vehicleCache.stats().evictions);
+        Metrics.gauge("vehicle_cache_rejections", () -> vehicleCache.stats().rejections);
+        Metrics.gauge("vehicle_cache_size", () -> vehicleCache.stats().size);
+    }
+
+    // Brings the schema up to date, prepares the id sequence, makes new records
+    // take their ids from it and loads the running totals
+    void start() throws SQLException {
+        start(Set.of());
+    }
+
+    // Same, also applying the optional migrations of these options
+    void start(Set<String> schemaOptions) throws SQLException {
+        this.schemaOptions = Set.copyOf(schemaOptions);
+        migrations = SchemaMigrations.migrate(pool, schemaOptions);
+        propertyIds.initialize();
+        Tax.setIdAllocator(propertyIds);
+        reports.seedRunningTotals();
+    }
+
+    TaxReports reports() {
+        return reports;
+    }
+
+    ConnectionPool pool() {
+        return pool;
+    }
+
+    // The schema migrations start() applied
+    List<SchemaMigrations.Migration> migrations() {
+        return migrations;
+    }
+
+    // Warnings for the statements run per record that don't find their row
+    // through an index and, with the report indexes, for the totals and
+    // reports that read table rows instead of just those indexes
+    List<String> checkIndexUse() throws SQLException {
+        Map<String, String> lookups = new LinkedHashMap<>();
+        lookups.put("Finding a property by id", SELECT_PROPERTY);
+        lookups.put("Storing a property's tax", UPDATE_PROPERTY_TAX);
+        lookups.put("Finding a vehicle by registration number", SELECT_VEHICLE);
+        lookups.put("Storing a vehicle's tax", UPDATE_VEHICLE_TAX);
+        // Without the report indexes these read every row by design
+        Map<String, String> scans = schemaOptions.contains(SchemaMigrations.REPORT_INDEXES)
+            ? reports.queries() : Map.of();
+        return SchemaMigrations.checkIndexUse(pool, lookups, scans);
+    }
+
+    TinyLfuCache.Stats vehicleCacheStats() {
+        return vehicleCache.stats();
+    }
+
+    // From now on updateTax() returns once the row is queued
+    synchronized void enableWriteBehind(int capacity, long maxDelayMillis) {
+        if (writeBehind == null) {
+            WriteBehindQueue<Map.Entry<RunningTotals.Category, Long>, Tax> queue = new WriteBehindQueue<>(
+                "write-behind", capacity, DEFAULT_BATCH_SIZE, maxDelayMillis,
+                ConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS, this::writeBatch);
+            Metrics.gauge("write_behind_pending", queue::size);
+            Metrics.gauge("write_behind_coalesced", queue::coalesced);
+            writeBehind = queue;
+        }
+    }
+
+    // Rows per transaction and per INSERT statement for saveAll(); one row per
+    // statement sends plain JDBC batches
+    void setInsertSizes(int transactionSize, int rowsPerInsert) {
+        if (transactionSize <= 0 || rowsPerInsert <= 0 || rowsPerInsert > MAX_ROWS_PER_INSERT) {
+            throw new IllegalArgumentException("Transaction size must be positive and rows per insert from 1 to "
+                                               + MAX_ROWS_PER_INSERT + ".");
+        }
+        this.transactionSize = transactionSize;
+        this.rowsPerInsert = rowsPerInsert;
+    }
+
+    @Override
+    public void addProperty(PropertyTax property) {
+        long start = System.nanoTime();
+        try (PooledConnection conn = pool.borrow()) {
+            INSERT_PROPERTY_OP.record(start, insertLogged(conn, INSERT_PROPERTY, JdbcTaxRepository::bindProperty,
+                                                          property));
+        } catch (SQLException e) {
+            INSERT_PROPERTY_OP.recordError(start);
+            if (isDuplicate(e)) {
+                throw new IllegalArgumentException("Property ID " + property.getId() + " already exists.");
+            }
+            throw storageError(e);
+        }
+        added(property);
+    }
+
+    // The database would refuse a longer brand, failing its whole transaction
+    @Override
+    public void checkFits(Tax record) {
+        TaxRepository.super.checkFits(record);
+        if (record instanceof VehicleTax vehicle
+                && vehicle.getBrand().codePointCount(0, vehicle.getBrand().length()) > MAX_BRAND_LENGTH) {
+            throw new IllegalArgumentException("Brand must be at most " + MAX_BRAND_LENGTH + " characters.");
+        }
+    }
+
+    @Override
+    public boolean addVehicle(VehicleTax vehicle) {
+        checkFits(vehicle);
+        long start = System.nanoTime();
+        try (PooledConnection conn = pool.borrow()) {
+            INSERT_VEHICLE_OP.record(start, insertLogged(conn, INSERT_VEHICLE, JdbcTaxRepository::bindVehicle,
+                                                         vehicle));
+        } catch (SQLException e) {
+            INSERT_VEHICLE_OP.recordError(start);
+            if (isDuplicate(e)) {
+                return false;
+            }
+            throw storageError(e);
+        }
+        added(vehicle);
+        return true;
+    }
+
+    @Override
+    public PropertyTax findProperty(long id) {
+        Tax queued = queued(RunningTotals.Category.PROPERTY, id);
+        if (queued != null) {
+            return (PropertyTax) queued;
+        }
+        long start = System.nanoTime();
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(SELECT_PROPERTY);
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                PropertyTax property = rs.next() ? property(rs) : null;
+                SELECT_PROPERTY_OP.record(start, property == null ? 0 : 1);
+                return property;
+            }
+        } catch (SQLException e) {
+            SELECT_PROPERTY_OP.recordError(start);
+            throw storageError(e);
+        }
+    }
+
+    @Override
+    public VehicleTax findVehicle(int registrNo) {
+        Tax queued = queued(RunningTotals.Category.VEHICLE, registrNo);
+        if (queued != null) {
+            return (VehicleTax) queued;
+        }
+        VehicleTax cached = vehicleCache.get(registrNo);
+        if (cached != null) {
+            VehicleTax vehicle = copy(cached);
+            vehicle.track(reports.runningTotals());
+            return vehicle;
+        }
+        long token = vehicleCache.token();
+        long start = System.nanoTime();
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(SELECT_VEHICLE);
+            stmt.setInt(1, registrNo);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    SELECT_VEHICLE_OP.record(start, 0);
+                    return null;
+                }
+                VehicleTax vehicle = vehicle(rs);
+                SELECT_VEHICLE_OP.record(start, 1);
+                vehicleCache.put(registrNo, copy(vehicle), token);
+                return vehicle;
+            }
+        } catch (SQLException e) {
+            SELECT_VEHICLE_OP.recordError(start);
+            throw storageError(e);
+        }
+    }
+
+    @Override
+    public void updateTax(Tax record) {
+        WriteBehindQueue<Map.Entry<RunningTotals.Category, Long>, Tax> queue = writeBehind;
+        if (queue != null) {
+            queue.put(key(record), record instanceof PropertyTax property ? copy(property) : copy((VehicleTax) record));
+            return;
+        }
+        Metrics.Operation op = record instanceof PropertyTax ? UPDATE_PROPERTY_TAX_OP : UPDATE_VEHICLE_TAX_OP;
+        long start = System.nanoTime();
+        try (PooledConnection conn = pool.borrow()) {
+            if (record instanceof PropertyTax property) {
+                PreparedStatement stmt = conn.prepare(UPDATE_PROPERTY_TAX);
+                bindPropertyTax(stmt, property);
+                op.record(start, stmt.executeUpdate());
+            } else {
+                op.record(start, updateVehicleLogged(conn, (VehicleTax) record));
+            }
+        } catch (SQLException e) {
+            op.recordError(start);
+            throw storageError(e);
+        } finally {
+            // After the write, so a find that read the old row can't cache it
+            if (record instanceof VehicleTax vehicle) {
+                vehicleCache.invalidate(vehicle.getRegistrationNumber());
+            }
+            reports.invalidate();
+        }
+    }
+
+    // Inserts a transaction's worth of rows at a time. A transaction containing
+    // a duplicate is rolled back and redone row by row, so only the duplicates
+    // are rejected.
+    @Override
+    public List<Tax> saveAll(Collection<? extends Tax> records) {
+        records.forEach(this::checkFits);
+        List<PropertyTax> properties = new ArrayList<>();
+        List<VehicleTax> vehicles = new ArrayList<>();
+        split(records, properties, vehicles);
+        List<Tax> rejected = new ArrayList<>();
+        try {
+            insertAll(PROPERTY_COLUMNS, PROPERTY_COLUMN_COUNT, INSERT_PROPERTY_OP, properties,
+                      JdbcTaxRepository::bindProperty, rejected);
+            insertAll(VEHICLE_COLUMNS, VEHICLE_COLUMN_COUNT, INSERT_VEHICLE_OP, vehicles,
+                      JdbcTaxRepository::bindVehicle, rejected);
+        } catch (SQLException e) {
+            throw storageError(e);
+        }
+        return rejected;
+    }
+
+    // Recalculates the rows in the change log, a batch of up to batchSize
+    // entries per transaction, until the log is empty. A batch's taxes are
+    // stored and its entries removed in the same transaction, so an
+    // interrupted run leaves the rest of the log for the next one. Runs are
+    // meant to take turns; two at once only repeat each other's work.
+    // Returns the number of records calculated.
+    long calculateChanges(int batchSize) {
+        flush(); // so queued updates can't overwrite the recalculated rows
+        long calculated = 0;
+        try (PooledConnection conn = pool.borrow()) {
+            Connection db = conn.connection();
+            while (true) {
+                List<ChangeLog.Change> changes = ChangeLog.next(conn, batchSize);
+                if (changes.isEmpty()) {
+                    return calculated;
+                }
+                long start = System.nanoTime();
+                long first = changes.get(0).seq, last = changes.get(changes.size() - 1).seq;
+                List<PropertyTax> properties = changed(conn, SELECT_CHANGED_PROPERTIES, first, last, this::property);
+                List<VehicleTax> vehicles = changed(conn, SELECT_CHANGED_VEHICLES, first, last, this::vehicle);
+                vehicles.removeIf(vehicle -> vehicle.getType() == 0); // nothing to calculate yet
+                // Calculated on untracked copies, so the running totals only
+                // take the new taxes once they are committed
+                List<PropertyTax> calculatedProperties = new ArrayList<>(properties.size());
+                List<VehicleTax> calculatedVehicles = new ArrayList<>(vehicles.size());
+                properties.forEach(property -> calculatedProperties.add(copy(property)));
+                vehicles.forEach(vehicle -> calculatedVehicles.add(copy(vehicle)));
+                calculatedProperties.forEach(Tax::calculateTax);
+                calculatedVehicles.forEach(Tax::calculateTax);
+                boolean autoCommit = db.getAutoCommit();
+                db.setAutoCommit(false);
+                try {
+                    addBatches(conn.prepare(UPDATE_PROPERTY_TAX), calculatedProperties,
+                               JdbcTaxRepository::bindPropertyTax);
+                    addBatches(conn.prepare(UPDATE_VEHICLE_TAX), calculatedVehicles,
+                               JdbcTaxRepository::bindVehicleTax);
+                    ChangeLog.removeAll(conn, changes);
+                    db.commit();
+                    applyTaxes(properties, calculatedProperties);
+                    applyTaxes(vehicles, calculatedVehicles);
+                    CALCULATE_CHANGES_OP.record(start, properties.size() + vehicles.size());
+                } catch (SQLException e) {
+                    CALCULATE_CHANGES_OP.recordError(start);
+                    db.rollback();
+                    throw e;
+                } finally {
+                    db.setAutoCommit(autoCommit);
+                    if (!vehicles.isEmpty()) {
+                        List<Integer> registrNos = new ArrayList<>(vehicles.size());
+                        vehicles.forEach(vehicle -> registrNos.add(vehicle.getRegistrationNumber()));
+                        vehicleCache.invalidateAll(registrNos);
+                    }
+                    reports.invalidate();
+                }
+                calculated += properties.size() + vehicles.size();
+            }
+        } catch (SQLException e) {
+            throw storageError(e);
+        }
+    }
+
+    long pendingChanges() {
+        try {
+            return ChangeLog.count(pool);
+        } catch (SQLException e) {
+            throw storageError(e);
+        }
+    }
+
+    // Already batched, so written straight away, after the queue so it can't overwrite these rows later
+    @Override
+    public void updateTaxBatch(Collection<? extends Tax> records) {
+        flush();
+        writeBatch(records);
+    }
+
+    private void writeBatch(Collection<? extends Tax> records) {
+        List<PropertyTax> properties = new ArrayList<>();
+        List<VehicleTax> vehicles = new ArrayList<>();
+        split(records, properties, vehicles);
+        try (PooledConnection conn = pool.borrow()) {
+            executeBatches(conn, UPDATE_PROPERTY_TAX, UPDATE_PROPERTY_TAX_OP, properties,
+                           JdbcTaxRepository::bindPropertyTax, null);
+            executeBatches(conn, UPDATE_VEHICLE_TAX, UPDATE_VEHICLE_TAX_OP, vehicles, JdbcTaxRepository::bindVehicleTax,
+                           ChangeLog::addChangedVehicles);
+        } catch (SQLException e) {
+            throw storageError(e);
+        } finally {
+            if (!vehicles.isEmpty()) {
+                List<Integer> registrNos = new ArrayList<>(vehicles.size());
+                vehicles.forEach(vehicle -> registrNos.add(vehicle.getRegistrationNumber()));
+                vehicleCache.invalidateAll(registrNos);
+            }
+            reports.invalidate();
+        }
+    }
+
+    @Override
+    public List<PropertyTax> propertyPage(long afterId, int limit) {
+        List<PropertyTax> page = new ArrayList<>();
+        long start = System.nanoTime();
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(SELECT_PROPERTY_PAGE);
+            stmt.setLong(1, afterId);
+            stmt.setInt(2, Math.min(limit, MAX_PAGE_SIZE));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    page.add(property(rs));
+                }
+            }
+            SELECT_PROPERTY_PAGE_OP.record(start, page.size());
+        } catch (SQLException e) {
+            SELECT_PROPERTY_PAGE_OP.recordError(start);
+            throw storageError(e);
+        }
+        replaceQueued(page);
+        return page;
+    }
+
+    @Override
+    public List<VehicleTax> vehiclePage(int afterRegistrNo, int limit) {
+        List<VehicleTax> page = new ArrayList<>();
+        long start = System.nanoTime();
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(SELECT_VEHICLE_PAGE);
+            stmt.setInt(1, afterRegistrNo);
+            stmt.setInt(2, Math.min(limit, MAX_PAGE_SIZE));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    page.add(vehicle(rs));
+                }
+            }
+            SELECT_VEHICLE_PAGE_OP.record(start, page.size());
+        } catch (SQLException e) {
+            SELECT_VEHICLE_PAGE_OP.recordError(start);
+            throw storageError(e);
+        }
+        replaceQueued(page);
+        return page;
+    }
+
+    @Override
+    public long propertyCount() {
+        try {
+            return reports.totals().propertyCount;
+        } catch (SQLException e) {
+            throw storageError(e);
+        }
+    }
+
+    @Override
+    public long vehicleCount() {
+        try {
+            return reports.totals().vehicleCount;
+        } catch (SQLException e) {
+            throw storageError(e);
+        }
+    }
+
+    @Override
+    public RunningTotals totals() {
+        return reports.runningTotals();
+    }
+
+    @Override
+    public List<RunningTotals.Reconciliation> reconcile() {
+        flush();
+        try {
+            return reports.reconcile();
+        } catch (SQLException e) {
+            throw storageError(e);
+        }
+    }
+
+    // Grouped in SQL, so only one row per group is read
+    @Override
+    public List<TaxReports.Row> summary() {
+        flush();
+        try {
+            return reports.summary();
+        } catch (SQLException e) {
+            throw storageError(e);
+        }
+    }
+
+    // Waits until queued updates are written
+    @Override
+    public void flush() {
+        WriteBehindQueue<Map.Entry<RunningTotals.Category, Long>, Tax> queue = writeBehind;
+        if (queue != null) {
+            queue.flush();
+        }
+    }
+
+    // Nothing is closed if queued updates can't be written
+    @Override
+    public void close() {
+        WriteBehindQueue<Map.Entry<RunningTotals.Category, Long>, Tax> queue = writeBehind;
+        if (queue != null) {
+            queue.close();
+        }
+        pool.close();
+    }
+
+    private static Map.Entry<RunningTotals.Category, Long> key(Tax record) {
+        return Map.entry(record.category(), ChangeLog.key(record));
+    }
+
+    // A tracked copy of the queued update of a row, or null if there is none
+    private Tax queued(RunningTotals.Category category, long id) {
+        WriteBehindQueue<Map.Entry<RunningTotals.Category, Long>, Tax> queue = writeBehind;
+        Tax queued = queue == null ? null : queue.get(Map.entry(category, id));
+        if (queued == null) {
+            return null;
+        }
+        Tax copy = queued instanceof PropertyTax property ? copy(property) : copy((VehicleTax) queued);
+        copy.track(reports.runningTotals());
+        return copy;
+    }
+
+    // Replaces rows of a page that have queued updates
+    private <T extends Tax> void replaceQueued(List<T> page) {
+        WriteBehindQueue<Map.Entry<RunningTotals.Category, Long>, Tax> queue = writeBehind;
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
+        for (ListIterator<T> it = page.listIterator(); it.hasNext(); ) {
+            T row = it.next();
+            @SuppressWarnings("unchecked")
+            T queued = (T) queued(row.category(), row.getId());
+            if (queued != null) {
+                it.set(queued);
+            }
+        }
+    }
+
+    // Inserts the records a transaction at a time, retrying a transaction that
+    // failed transiently up to INSERT_ATTEMPTS times
+    private <T extends Tax> void insertAll(String columns, int columnCount, Metrics.Operation op, List<T> records,
+                                           RowBinder<T> binder, List<Tax> rejected) throws SQLException {
+        int size = transactionSize;
+        int perInsert = rowsPerInsert;
+        String multiRowSql = insertSql(columns, columnCount, perInsert);
+        String rowSql = insertSql(columns, columnCount, 1);
+        for (int from = 0; from < records.size(); from += size) {
+            // Records still to insert; a row-by-row redo removes each one it finishes
+            List<T> pending = new ArrayList<>(records.subList(from, Math.min(records.size(), from + size)));
+            for (int attempt = 1; ; attempt++) {
+                try (PooledConnection conn = pool.borrow()) {
+                    insertTransaction(conn, multiRowSql, perInsert, rowSql, columnCount, op, pending, binder,
+                                      attempt > 1, rejected);
+                    break;
+                } catch (SQLException e) {
+                    if (attempt == INSERT_ATTEMPTS || !isTransient(e)) {
+                        throw e;
+                    }
+                    System.err.println("Warning: Insert of " + pending.size() + " rows failed, retrying: "
+                                       + e.getMessage());
+                    pause(INSERT_RETRY_DELAY_MILLIS * attempt);
+                }
+            }
+        }
+    }
+
+    // Inserts the rows perInsert to a statement, the remainder one to a
+    // statement, all in one JDBC batch per statement and one transaction.
+    // On a duplicate, rolls back and inserts them row by row instead.
+    private <T extends Tax> void insertTransaction(PooledConnection conn, String multiRowSql, int perInsert,
+                                                   String rowSql, int columnCount, Metrics.Operation op,
+                                                   List<T> pending, RowBinder<T> binder, boolean retry,
+                                                   List<Tax> rejected) throws SQLException {
+        Connection db = conn.connection();
+        boolean autoCommit = db.getAutoCommit();
+        db.setAutoCommit(false);
+        long start = System.nanoTime();
+        try {
+            int full = pending.size() / perInsert * perInsert;
+            addRows(conn.prepare(multiRowSql), pending.subList(0, full), perInsert, columnCount, binder);
+            addRows(conn.prepare(rowSql), pending.subList(full, pending.size()), 1, columnCount, binder);
+            ChangeLog.addAll(conn, pending);
+            db.commit();
+            op.record(start, pending.size());
+            pending.forEach(this::added);
+            pending.clear();
+        } catch (SQLException e) {
+            op.recordError(start);
+            db.rollback();
+            if (!isDuplicate(e)) {
+                throw e;
+            }
+            insertRowByRow(conn, rowSql, op, pending, binder, retry, rejected);
+        } finally {
+            db.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Sends rows perInsert at a time as one batch; rows.size() is a multiple of perInsert
+    private static <T extends Tax> void addRows(PreparedStatement stmt, List<T> rows, int perInsert, int columnCount,
+                                                RowBinder<T> binder) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                binder.bind(stmt, i % perInsert * columnCount + 1, rows.get(i));
+                if (i % perInsert == perInsert - 1) {
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        } finally {
+            stmt.clearBatch();
+        }
+    }
+
+    // On a retry, a duplicate that holds exactly what the record would store
+    // was inserted by an attempt whose commit succeeded but did not get back
+    private <T extends Tax> void insertRowByRow(PooledConnection conn, String rowSql, Metrics.Operation op,
+                                                List<T> pending, RowBinder<T> binder, boolean retry,
+                                                List<Tax> rejected) throws SQLException {
+        Iterator<T> it = pending.iterator();
+        while (it.hasNext()) {
+            T record = it.next();
+            long rowStart = System.nanoTime();
+            try {
+                op.record(rowStart, insertLogged(conn, rowSql, binder, record));
+                added(record);
+            } catch (SQLException rowError) {
+                op.recordError(rowStart);
+                if (!isDuplicate(rowError)) {
+                    throw rowError;
+                }
+                if (retry && isStored(conn, record)) {
+                    added(record);
+                } else {
+                    rejected.add(record);
+                }
+            }
+            it.remove();
+        }
+    }
+
+    // Inserts one row and its change log entry in one transaction; returns the rows inserted
+    private static <T extends Tax> int insertLogged(PooledConnection conn, String sql, RowBinder<T> binder,
+                                                    T record) throws SQLException {
+        Connection db = conn.connection();
+        boolean autoCommit = db.getAutoCommit();
+        db.setAutoCommit(false);
+        try {
+            PreparedStatement stmt = conn.prepare(sql);
+            binder.bind(stmt, 1, record);
+            int rows = stmt.executeUpdate();
+            ChangeLog.addAll(conn, List.of(record));
+            db.commit();
+            return rows;
+        } catch (SQLException e) {
+            db.rollback();
+            throw e;
+        } finally {
+            db.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Updates one vehicle and logs a change of its type or price in one transaction; returns the rows updated
+    private static int updateVehicleLogged(PooledConnection conn, VehicleTax vehicle) throws SQLException {
+        Connection db = conn.connection();
+        boolean autoCommit = db.getAutoCommit();
+        db.setAutoCommit(false);
+        try {
+            ChangeLog.addChangedVehicles(conn, List.of(vehicle));
+            PreparedStatement stmt = conn.prepare(UPDATE_VEHICLE_TAX);
+            bindVehicleTax(stmt, vehicle);
+            int rows = stmt.executeUpdate();
+            db.commit();
+            return rows;
+        } catch (SQLException e) {
+            db.rollback();
+            throw e;
+        } finally {
+            db.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Within the caller's transaction
+    private static <T extends Tax> void addBatches(PreparedStatement stmt, List<T> records, Binder<T> binder)
+            throws SQLException {
+        for (int from = 0; from < records.size(); from += DEFAULT_BATCH_SIZE) {
+            for (T record : records.subList(from, Math.min(records.size(), from + DEFAULT_BATCH_SIZE))) {
+                binder.bind(stmt, record);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    // The rows of one table that have change log entries from first to last
+    private static <T extends Tax> List<T> changed(PooledConnection conn, String sql, long first, long last,
+                                                   RowReader<T> reader) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        PreparedStatement stmt = conn.prepare(sql);
+        stmt.setLong(1, first);
+        stmt.setLong(2, last);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(reader.read(rs));
+            }
+        }
+        return rows;
+    }
+
+    // All the records in one transaction, sent DEFAULT_BATCH_SIZE statements
+    // at a time, so the caller's chunk is the unit that commits or rolls back
+    private static <T extends Tax> void executeBatches(PooledConnection conn, String sql, Metrics.Operation op,
+                                                       List<T> records, Binder<T> binder, BatchStep<T> before)
+            throws SQLException {
+        if (records.isEmpty()) {
+            return;
+        }
+        Connection db = conn.connection();
+        PreparedStatement stmt = conn.prepare(sql);
+        boolean autoCommit = db.getAutoCommit();
+        db.setAutoCommit(false);
+        long start = System.nanoTime();
+        try {
+            if (before != null) {
+                before.run(conn, records);
+            }
+            for (int from = 0; from < records.size(); from += DEFAULT_BATCH_SIZE) {
+                for (T record : records.subList(from, Math.min(records.size(), from + DEFAULT_BATCH_SIZE))) {
+                    binder.bind(stmt, record);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            db.commit();
+            op.record(start, records.size());
+        } catch (SQLException e) {
+            op.recordError(start);
+            stmt.clearBatch();
+            db.rollback();
+            throw e;
+        } finally {
+            db.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Counts a newly stored record in the running totals and tracks it from now on
+    private void added(Tax record) {
+        reports.recordChange(record);
+        record.track(reports.runningTotals());
+    }
+
+    private static void split(Collection<? extends Tax> records, List<PropertyTax> properties,
+                              List<VehicleTax> vehicles) {
+        for (Tax record : records) {
+            if (record instanceof PropertyTax property) {
+                properties.add(property);
+            } else {
+                vehicles.add((VehicleTax) record);
+            }
+        }
+    }
+
+    private static void bindProperty(PreparedStatement stmt, int index, PropertyTax property) throws SQLException {
+        stmt.setLong(index, property.getId());
+        stmt.setInt(index + 1, property.getBaseValue());
+        stmt.setInt(index + 2, property.getBuiltUpArea());
+        stmt.setInt(index + 3, property.getAge());
+        stmt.setString(index + 4, String.valueOf(property.getLocation()));
+        setTax(stmt, index + 5, property);
+    }
+
+    private static void bindPropertyTax(PreparedStatement stmt, PropertyTax property) throws SQLException {
+        setTax(stmt, 1, property);
+        stmt.setLong(2, property.getId());
+    }
+
+    private static void bindVehicle(PreparedStatement stmt, int index, VehicleTax vehicle) throws SQLException {
+        stmt.setInt(index, vehicle.getRegistrationNumber());
+        stmt.setString(index + 1, vehicle.getBrand());
+        stmt.setInt(index + 2, vehicle.getVelocity());
+        stmt.setInt(index + 3, vehicle.getSeatCapacity());
+        setTypeAndPrice(stmt, index + 4, vehicle);
+        setTax(stmt, index + 6, vehicle);
+    }
+
+    private static void bindVehicleTax(PreparedStatement stmt, VehicleTax vehicle) throws SQLException {
+        setTypeAndPrice(stmt, 1, vehicle);
+        setTax(stmt, 3, vehicle);
+        stmt.setInt(4, vehicle.getRegistrationNumber());
+    }
+
+    // A tax that has not been calculated is stored as NULL. Bound as a decimal,
+    // so a DECIMAL column holds it exactly; a DOUBLE column rounds it to a double.
+    private static void setTax(PreparedStatement stmt, int index, Tax record) throws SQLException {
+        if (record.isCalculated()) {
+            stmt.setBigDecimal(index, record.getTaxAmount());
+        } else {
+            stmt.setNull(index, Types.DOUBLE);
+        }
+    }
+
+    private static void setTypeAndPrice(PreparedStatement stmt, int index, VehicleTax vehicle) throws SQLException {
+        if (vehicle.getType() == 0) {
+            stmt.setNull(index, Types.INTEGER);
+            stmt.setNull(index + 1, Types.INTEGER);
+        } else {
+            stmt.setInt(index, vehicle.getType());
+            stmt.setInt(index + 1, vehicle.getPrice());
+        }
+    }
+
+    private PropertyTax property(ResultSet rs) throws SQLException {
+        String location = rs.getString("location");
+        PropertyTax property = new PropertyTax(rs.getLong("id"), rs.getInt("base_value"), rs.getInt("built_up_area"),
+                                               rs.getInt("age"), location == null || location.isEmpty() ? ' ' : location.charAt(0));
+        restoreTax(rs, property);
+        return property;
+    }
+
+    // vehicle_tax is keyed by registration number, which also serves as the record id
+    private VehicleTax vehicle(ResultSet rs) throws SQLException {
+        int registrNo = rs.getInt("registration_number");
+        VehicleTax vehicle = new VehicleTax(registrNo, registrNo, rs.getString("brand"),
+                                            rs.getInt("velocity"), rs.getInt("seat_capacity"));
+        vehicle.setTypeAndPrice(rs.getInt("type"), rs.getInt("price"));
+        restoreTax(rs, vehicle);
+        return vehicle;
+    }
+
+    // Gives tracked records the taxes calculated on their copies, which applies
+    // the changes to the running totals
+    private static void applyTaxes(List<? extends Tax> records, List<? extends Tax> calculated) {
+        for (int i = 0; i < records.size(); i++) {
+            records.get(i).restoreTax(calculated.get(i).getTaxAmount());
+        }
+    }
+
+    // Untracked copies with the same fields and tax
+    private static PropertyTax copy(PropertyTax property) {
+        PropertyTax copy = new PropertyTax(property.getId(), property.getBaseValue(), property.getBuiltUpArea(),
+                                           property.getAge(), property.getLocation());
+        if (property.isCalculated()) {
+            copy.restoreTax(property.getTaxAmount());
+        }
+        return copy;
+    }
+
+    private static VehicleTax copy(VehicleTax vehicle) {
+        VehicleTax copy = new VehicleTax(vehicle.getId(), vehicle.getRegistrationNumber(), vehicle.getBrand(),
+                                         vehicle.getVelocity(), vehicle.getSeatCapacity());
+        copy.setTypeAndPrice(vehicle.getType(), vehicle.getPrice());
+        if (vehicle.isCalculated()) {
+            copy.restoreTax(vehicle.getTaxAmount());
+        }
+        return copy;
+    }
+
+    // Loaded rows are already counted in the running totals, so the tax is restored before tracking
+    private void restoreTax(ResultSet rs, Tax record) throws SQLException {
+        BigDecimal tax = rs.getBigDecimal("tax");
+        if (tax != null) {
+            record.restoreTax(tax);
+        }
+        record.track(reports.runningTotals());
+    }
+
+    // INSERT INTO columns VALUES (?, ...), (?, ...), ... with rows rows
+    private static String insertSql(String columns, int columnCount, int rows) {
+        String row = "(" + String.join(", ", Collections.nCopies(columnCount, "?")) + ")";
+        return "INSERT INTO " + columns + " VALUES " + String.join(", ", Collections.nCopies(rows, row));
+    }
+
+    // Whether the record's row is stored with exactly the values inserting it would write
+    private boolean isStored(PooledConnection conn, Tax record) throws SQLException {
+        boolean property = record instanceof PropertyTax;
+        PreparedStatement stmt = conn.prepare(property ? SELECT_PROPERTY : SELECT_VEHICLE);
+        stmt.setLong(1, ChangeLog.key(record));
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                return false;
+            }
+            if (property) {
+                PropertyTax stored = property(rs);
+                PropertyTax p = (PropertyTax) record;
+                return stored.getBaseValue() == p.getBaseValue() && stored.getBuiltUpArea() == p.getBuiltUpArea()
+                       && stored.getAge() == p.getAge() && stored.getLocation() == p.getLocation()
+                       && sameTax(stored, record);
+            }
+            VehicleTax stored = vehicle(rs);
+            VehicleTax v = (VehicleTax) record;
+            return Objects.equals(stored.getBrand(), v.getBrand()) && stored.getVelocity() == v.getVelocity()
+                   && stored.getSeatCapacity() == v.getSeatCapacity() && stored.getType() == v.getType()
+                   && stored.getPrice() == v.getPrice() && sameTax(stored, record);
+        }
+    }
+
+    private static boolean sameTax(Tax a, Tax b) {
+        return a.isCalculated() == b.isCalculated()
+               && (!a.isCalculated() || a.getTaxAmount().compareTo(b.getTaxAmount()) == 0);
+    }
+
+    // SQLState class 08 (connection exception) or 40 (transaction rollback,
+    // e.g. a deadlock), or an exception the driver marks as transient: the
+    // same statements may well succeed if tried again
+    private static boolean isTransient(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            String state = next.getSQLState();
+            if (next instanceof SQLTransientException || next instanceof SQLRecoverableException
+                || state != null && (state.startsWith("08") || state.startsWith("40"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted waiting to retry an insert.", e);
+        }
+    }
+
+    // SQLState class 23: integrity constraint violation, e.g. a duplicate key
+    private static boolean isDuplicate(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            if (next.getSQLState() != null && next.getSQLState().startsWith("23")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static StorageException storageError(SQLException e) {
+        return new StorageException("Database error: " + e.getMessage(), e);
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Process-wide operation metrics: a count, an error count, the rows
+// processed and a latency histogram per named operation, plus gauges that
+// are read when exporting. Operations are timed per user action, per chunk
+// of a bulk calculation or per SQL statement, never per record, so the cost
+// is two nanoTime() calls and a few striped adds per unit of work.
+//
+// Exported as a log line (logLine()), as Prometheus text (writePrometheus())
+// and as a TaxOperationEvent per operation while a JFR recording enables it.
+// report() writes the first two on a schedule.
+final class Metrics {
+    static final long DEFAULT_REPORT_MILLIS = 60_000;
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    static final class Operation {
+        final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        // Records a completed operation that started at startNanos (System.nanoTime())
+        void record(long startNanos, long rowCount) {
+            finish(startNanos, rowCount, false);
+        }
+
+        void recordError(long startNanos) {
+            finish(startNanos, 0, true);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long errors() {
+            return errors.sum();
+        }
+
+        long rows() {
+            return rows.sum();
+        }
+
+        LatencyHistogram latency() {
+            return latency;
+        }
+
+        private void finish(long startNanos, long rowCount, boolean failed) {
+            long nanos = System.nanoTime() - startNanos;
+            count.increment();
+            if (failed) {
+                errors.increment();
+            }
+            if (rowCount != 0) {
+                rows.add(rowCount);
+            }
+            latency.record(nanos);
+            TaxOperationEvent event = new TaxOperationEvent();
+            if (event.isEnabled()) {
+                event.operation = name;
+                event.elapsed = nanos;
+                event.rows = rowCount;
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    // Sorted, so exports list operations in a stable order
+    private static final Map<String, Operation> operations = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    // Callers keep the result in a static final field
+    static Operation operation(String name) {
+        return operations.computeIfAbsent(name, Operation::new);
+    }
+
+    // A value read at export time; registering a name again replaces it
+    static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    // One line with the operations that have run, e.g.
+    //   metrics: calculate n=12 err=0 rows=12 p50=0.41ms p99=1.20ms max=1.31ms; ...
+    static String logLine() {
+        StringBuilder line = new StringBuilder("metrics:");
+        String separator = " ";
+        for (Operation op : operations.values()) {
+            long count = op.count();
+            if (count == 0) {
+                continue;
+            }
+            LatencyHistogram latency = op.latency();
+            line.append(separator).append(op.name).append(" n=").append(count).append(" err=").append(op.errors())
+                .append(" rows=").append(op.rows())
+                .append(String.format(" p50=%.2fms p99=%.2fms max=%.2fms", millis(latency.percentile(0.5)),
+                                      millis(latency.percentile(0.99)), millis(latency.max())));
+            separator = "; ";
+        }
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            line.append(separator).append(gauge.getKey()).append('=').append(gauge.getValue().getAsLong());
+            separator = "; ";
+        }
+        return line.toString();
+    }
+
+    // Prometheus text exposition format, version 0.0.4
+    static void writePrometheus(Writer out) throws IOException {
+        out.write("# HELP tax_operation_duration_seconds Latency of tax operations and SQL statements.\n");
+        out.write("# TYPE tax_operation_duration_seconds summary\n");
+        for (Operation op : operations.values()) {
+            String label = "operation=\"" + op.name + "\"";
+            for (double quantile : QUANTILES) {
+                out.write("tax_operation_duration_seconds{" + label + ",quantile=\"" + quantile + "\"} "
+                          + seconds(op.latency().percentile(quantile)) + "\n");
+            }
+            out.write("tax_operation_duration_seconds_sum{" + label + "} " + seconds(op.latency().totalNanos()) + "\n");
+            out.write("tax_operation_duration_seconds_count{" + label + "} " + op.count() + "\n");
+        }
+        out.write("# HELP tax_operation_errors_total Failed tax operations and SQL statements.\n");
+        out.write("# TYPE tax_operation_errors_total counter\n");
+        for (Operation op : operations.values()) {
+            out.write("tax_operation_errors_total{operation=\"" + op.name + "\"} " + op.errors() + "\n");
+        }
+        out.write("# HELP tax_operation_rows_total Records or rows processed by tax operations and SQL statements.\n");
+        out.write("# TYPE tax_operation_rows_total counter\n");
+        for (Operation op : operations.values()) {
+            out.write("tax_operation_rows_total{operation=\"" + op.name + "\"} " + op.rows() + "\n");
+        }
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            out.write("# TYPE tax_" + gauge.getKey() + " gauge\n");
+            out.write("tax_" + gauge.getKey() + " " + gauge.getValue().getAsLong() + "\n");
+        }
+    }
+
+    // Replaces the file in one step, so a scraper never reads half of it
+    static void dump(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writePrometheus(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Every periodMillis, on a daemon thread: dumps to file and logs a line to stderr
+    static void report(Path file, long periodMillis) {
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleWithFixedDelay(() -> {
+            try {
+                dump(file);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+            }
+            System.err.println(logLine());
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+}
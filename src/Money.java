@@ -0,0 +1,116 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+// Fixed-point money. Amounts are a long count of paise (hundredths of a
+// rupee) and rates a long count of millionths, so tax arithmetic is exact
+// and allocates nothing. Every step that could overflow a long is checked:
+// the fast paths throw ArithmeticException instead of wrapping, and the
+// caller redoes that one calculation in BigDecimal.
+final class Money {
+    static final int SCALE = 2;      // decimal places of an amount
+    static final int RATE_SCALE = 6; // decimal places of a rate
+    static final long PAISE_PER_RUPEE = 100;
+    static final long MICROS_PER_RUPEE = 1_000_000;
+
+    private static final long MICROS_PER_PAISA = MICROS_PER_RUPEE / PAISE_PER_RUPEE;
+    private static final double MAX_EXACT_DOUBLE = 0x1p53;
+
+    private Money() {
+    }
+
+    // A rate as millionths. A rate with more decimal places can't be
+    // represented and throws ArithmeticException.
+    static long micros(double rate) {
+        return BigDecimal.valueOf(rate).setScale(RATE_SCALE).unscaledValue().longValueExact();
+    }
+
+    static BigDecimal rate(long micros) {
+        return BigDecimal.valueOf(micros, RATE_SCALE);
+    }
+
+    // Rounds millionths of a rupee to paise, half to even
+    static long microsToPaise(long micros) {
+        long paise = Math.floorDiv(micros, MICROS_PER_PAISA);
+        long remainder = Math.floorMod(micros, MICROS_PER_PAISA);
+        if (remainder > MICROS_PER_PAISA / 2 || (remainder == MICROS_PER_PAISA / 2 && (paise & 1) != 0)) {
+            paise++;
+        }
+        return paise;
+    }
+
+    // Rounds an exact amount to paise, half to even, like microsToPaise()
+    static BigDecimal round(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    // True if a rounded amount fits in a long of paise
+    static boolean fitsPaise(BigDecimal rounded) {
+        return rounded.unscaledValue().bitLength() < Long.SIZE;
+    }
+
+    static BigDecimal toBigDecimal(long paise) {
+        return BigDecimal.valueOf(paise, SCALE);
+    }
+
+    // The nearest double, for display and for storage that only holds doubles
+    static double toRupees(long paise) {
+        return paise / (double) PAISE_PER_RUPEE;
+    }
+
+    // True if an amount read back as a double can be turned into the exact
+    // paise it was written from, which holds below 2^53 paise
+    static boolean isExactAsDouble(double rupees) {
+        return Math.abs(rupees * PAISE_PER_RUPEE) < MAX_EXACT_DOUBLE;
+    }
+
+    // The paise an amount written with toRupees() came from; see isExactAsDouble()
+    static long paise(double rupees) {
+        return Math.round(rupees * PAISE_PER_RUPEE);
+    }
+
+    // An exact total of amounts. Adding a long is one overflow-checked add;
+    // only the part of the total beyond a long is kept as a BigDecimal.
+    // Not thread-safe; partial sums of separate threads can be merged.
+    static final class Sum {
+        private long paise;
+        private BigDecimal overflow; // null until the paise would overflow
+
+        void add(long amount) {
+            long sum = paise + amount;
+            if (((paise ^ sum) & (amount ^ sum)) < 0) { // the signs say the long wrapped
+                add(BigInteger.valueOf(paise).add(BigInteger.valueOf(amount)));
+                sum = 0;
+            }
+            paise = sum;
+        }
+
+        void add(BigDecimal amount) {
+            overflow = overflow == null ? amount : overflow.add(amount);
+        }
+
+        void add(Tax record) {
+            if (record.largeTax != null) {
+                add(record.largeTax);
+            } else {
+                add(record.taxPaise);
+            }
+        }
+
+        void add(Sum other) {
+            add(other.paise);
+            if (other.overflow != null) {
+                add(other.overflow);
+            }
+        }
+
+        BigDecimal value() {
+            BigDecimal value = toBigDecimal(paise);
+            return overflow == null ? value : value.add(overflow);
+        }
+
+        private void add(BigInteger paise) {
+            add(new BigDecimal(paise, SCALE));
+        }
+    }
+}
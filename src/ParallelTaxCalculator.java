@@ -0,0 +1,109 @@
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Calculates and totals the in-memory registries on a ForkJoinPool.
+// Lists are split into fixed-size leaves, so the tree of tasks does not depend
+// on the pool's parallelism. Totals are exact sums of the records' paise.
+class ParallelTaxCalculator {
+    static final int LEAF_SIZE = 8192;
+
+    private final ForkJoinPool pool;
+
+    ParallelTaxCalculator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    ParallelTaxCalculator(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    int parallelism() {
+        return pool.getParallelism();
+    }
+
+    // Calculates every pending entry; returns how many were calculated.
+    int calculatePending(List<? extends Tax> records) {
+        return pool.invoke(new CalculateTask(records, 0, records.size()));
+    }
+
+    BigDecimal total(List<? extends Tax> records) {
+        return pool.invoke(new SumTask(records, 0, records.size())).value();
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private static class CalculateTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends Tax> records;
+        private final int from;
+        private final int to;
+
+        CalculateTask(List<? extends Tax> records, int from, int to) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= LEAF_SIZE) {
+                int calculated = 0;
+                for (int i = from; i < to; i++) {
+                    Tax record = records.get(i);
+                    if (record.isPending()) {
+                        record.calculateTax();
+                        calculated++;
+                    }
+                }
+                return calculated;
+            }
+            int mid = split(from, to);
+            CalculateTask left = new CalculateTask(records, from, mid);
+            left.fork();
+            int right = new CalculateTask(records, mid, to).compute();
+            return left.join() + right;
+        }
+    }
+
+    private static class SumTask extends RecursiveTask<Money.Sum> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends Tax> records;
+        private final int from;
+        private final int to;
+
+        SumTask(List<? extends Tax> records, int from, int to) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Money.Sum compute() {
+            if (to - from <= LEAF_SIZE) {
+                Money.Sum sum = new Money.Sum();
+                for (int i = from; i < to; i++) {
+                    sum.add(records.get(i));
+                }
+                return sum;
+            }
+            int mid = split(from, to);
+            SumTask left = new SumTask(records, from, mid);
+            left.fork();
+            Money.Sum right = new SumTask(records, mid, to).compute();
+            Money.Sum sum = left.join();
+            sum.add(right);
+            return sum;
+        }
+    }
+
+    // Splits on a leaf boundary so the tree shape only depends on the list size.
+    private static int split(int from, int to) {
+        int leaves = (to - from + LEAF_SIZE - 1) / LEAF_SIZE;
+        return from + (leaves / 2) * LEAF_SIZE;
+    }
+}
@@ -0,0 +1,325 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Recalculates every record with several worker processes sharing the
+// database. plan() splits the property ids and the vehicle registration
+// numbers into key ranges, one row per range in the calculation_lease table.
+// Each worker then claims a range by taking its lease, recalculates and
+// stores its records a batch at a time, renewing the lease as it goes, and
+// marks the range finished. A range whose worker stops renewing is claimed
+// again by another worker once its lease expires.
+//
+// Lease times are taken from the database clock, so workers on different
+// hosts don't need synchronized clocks. A range can be calculated twice, by
+// a worker that lost its lease while writing and by the one that took it
+// over; both write the same taxes, since recalculating is idempotent.
+class PartitionedCalculation {
+    static final long DEFAULT_LEASE_SECONDS = 30;
+
+    private static final long POLL_MILLIS = 1000;
+
+    private static final String LIVE_LEASES =
+        "SELECT COUNT(*) FROM calculation_lease WHERE finished = FALSE AND expires_at >= CURRENT_TIMESTAMP";
+    private static final String DELETE_LEASES = "DELETE FROM calculation_lease";
+    private static final String INSERT_LEASE =
+        "INSERT INTO calculation_lease (kind, partition_no, low_key, high_key) VALUES (?, ?, ?, ?)";
+    private static final String PROPERTY_KEYS = "SELECT MIN(id), MAX(id) FROM property_tax";
+    private static final String VEHICLE_KEYS = "SELECT MIN(registration_number), MAX(registration_number) FROM vehicle_tax";
+    private static final String CLAIMABLE_CONDITION =
+        " finished = FALSE AND (owner IS NULL OR expires_at < CURRENT_TIMESTAMP)";
+    private static final String SELECT_CLAIMABLE =
+        "SELECT kind, partition_no, low_key, high_key FROM calculation_lease WHERE" + CLAIMABLE_CONDITION;
+    // Checks the condition again, so of two workers claiming the same range only one updates it
+    private static final String CLAIM =
+        "UPDATE calculation_lease SET owner = ?, expires_at = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)"
+        + " WHERE kind = ? AND partition_no = ? AND" + CLAIMABLE_CONDITION;
+    private static final String RENEW =
+        "UPDATE calculation_lease SET expires_at = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)"
+        + " WHERE kind = ? AND partition_no = ? AND owner = ? AND finished = FALSE";
+    private static final String FINISH =
+        "UPDATE calculation_lease SET finished = TRUE, row_count = ?, expires_at = NULL"
+        + " WHERE kind = ? AND partition_no = ? AND owner = ? AND finished = FALSE";
+    private static final String STATUS =
+        "SELECT COUNT(*), COALESCE(SUM(CASE WHEN finished THEN 1 ELSE 0 END), 0),"
+        + " COALESCE(SUM(CASE WHEN NOT finished AND expires_at >= CURRENT_TIMESTAMP THEN 1 ELSE 0 END), 0),"
+        + " COALESCE(SUM(row_count), 0) FROM calculation_lease";
+
+    private static final Metrics.Operation PARTITION_OP = Metrics.operation("calculate_partition");
+
+    // One key range of one table: keys after low and up to high
+    static class Partition {
+        final RunningTotals.Category kind;
+        final int number;
+        final long low;
+        final long high;
+
+        Partition(RunningTotals.Category kind, int number, long low, long high) {
+            this.kind = kind;
+            this.number = number;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        public String toString() {
+            return kind.name().toLowerCase() + " partition " + number + " (" + low + ", " + high + "]";
+        }
+    }
+
+    static class Status {
+        final int partitions;
+        final int finished;
+        final int leased;
+        final long rows;
+
+        Status(int partitions, int finished, int leased, long rows) {
+            this.partitions = partitions;
+            this.finished = finished;
+            this.leased = leased;
+            this.rows = rows;
+        }
+
+        boolean isDone() {
+            return finished == partitions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d partitions finished, %d leased, %d rows", finished, partitions, leased, rows);
+        }
+    }
+
+    // Thrown when another worker has taken over a partition's lease
+    private static class LeaseLostException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        LeaseLostException(Partition partition) {
+            super("Lost the lease on " + partition);
+        }
+    }
+
+    private final JdbcTaxRepository repository;
+    private final ConnectionPool pool;
+    private final String owner;
+    private final long leaseSeconds;
+
+    PartitionedCalculation(JdbcTaxRepository repository, long leaseSeconds) {
+        if (leaseSeconds <= 0) {
+            throw new IllegalArgumentException("Lease time must be positive.");
+        }
+        this.repository = repository;
+        this.pool = repository.pool();
+        this.owner = workerName();
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    String owner() {
+        return owner;
+    }
+
+    // Replaces the previous plan with partitions ranges per table.
+    // Refuses while a worker still holds a lease on the previous one.
+    List<Partition> plan(int partitions) throws SQLException {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Number of partitions must be positive.");
+        }
+        List<Partition> plan = new ArrayList<>();
+        try (PooledConnection conn = pool.borrow()) {
+            Connection db = conn.connection();
+            boolean autoCommit = db.getAutoCommit();
+            db.setAutoCommit(false);
+            try (Statement stmt = db.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery(LIVE_LEASES)) {
+                    rs.next();
+                    if (rs.getLong(1) > 0) {
+                        throw new SQLException(rs.getLong(1) + " partitions of the previous calculation are still"
+                                               + " leased; wait until their leases expire.");
+                    }
+                }
+                stmt.executeUpdate(DELETE_LEASES);
+                split(stmt, PROPERTY_KEYS, RunningTotals.Category.PROPERTY, partitions, plan);
+                split(stmt, VEHICLE_KEYS, RunningTotals.Category.VEHICLE, partitions, plan);
+                PreparedStatement insert = conn.prepare(INSERT_LEASE);
+                for (Partition partition : plan) {
+                    insert.setString(1, partition.kind.name());
+                    insert.setInt(2, partition.number);
+                    insert.setLong(3, partition.low);
+                    insert.setLong(4, partition.high);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                db.commit();
+            } catch (SQLException e) {
+                db.rollback();
+                throw e;
+            } finally {
+                db.setAutoCommit(autoCommit);
+            }
+        }
+        return plan;
+    }
+
+    // Claims and calculates partitions until every one is finished, waiting
+    // for those leased by other workers in case their leases expire.
+    // Returns the number of partitions this worker finished.
+    int work() throws SQLException {
+        int finished = 0;
+        while (true) {
+            Partition partition = claim();
+            if (partition != null) {
+                if (calculate(partition)) {
+                    finished++;
+                }
+                continue;
+            }
+            if (status().isDone()) {
+                return finished;
+            }
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return finished;
+            }
+        }
+    }
+
+    Status status() throws SQLException {
+        try (PooledConnection conn = pool.borrow();
+             ResultSet rs = conn.prepare(STATUS).executeQuery()) {
+            rs.next();
+            return new Status(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getLong(4));
+        }
+    }
+
+    // Takes the lease of an unleased or expired partition, or returns null if there is none.
+    // Candidates are tried in random order, so workers starting together rarely collide.
+    private Partition claim() throws SQLException {
+        try (PooledConnection conn = pool.borrow()) {
+            List<Partition> candidates = new ArrayList<>();
+            try (ResultSet rs = conn.prepare(SELECT_CLAIMABLE).executeQuery()) {
+                while (rs.next()) {
+                    candidates.add(new Partition(RunningTotals.Category.valueOf(rs.getString(1)), rs.getInt(2),
+                                                 rs.getLong(3), rs.getLong(4)));
+                }
+            }
+            Collections.shuffle(candidates);
+            PreparedStatement claim = conn.prepare(CLAIM);
+            for (Partition candidate : candidates) {
+                claim.setString(1, owner);
+                claim.setLong(2, leaseSeconds);
+                claim.setString(3, candidate.kind.name());
+                claim.setInt(4, candidate.number);
+                if (claim.executeUpdate() == 1) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Recalculates and stores one partition; false if its lease was lost on the way
+    private boolean calculate(Partition partition) throws SQLException {
+        long start = System.nanoTime();
+        long renewEvery = leaseSeconds * 1_000_000_000L / 3;
+        long renewed = start;
+        long rows = 0;
+        try (Stream<? extends Tax> records = records(partition)) {
+            List<Tax> batch = new ArrayList<>(TaxRepository.DEFAULT_BATCH_SIZE);
+            for (Iterator<? extends Tax> it = records.iterator(); it.hasNext(); ) {
+                Tax record = it.next();
+                if (record instanceof VehicleTax vehicle && vehicle.getType() == 0) {
+                    continue; // nothing to calculate until the type and price are set
+                }
+                record.calculateTax();
+                batch.add(record);
+                if (batch.size() == TaxRepository.DEFAULT_BATCH_SIZE) {
+                    repository.updateTaxBatch(batch);
+                    rows += batch.size();
+                    batch.clear();
+                    if (System.nanoTime() - renewed > renewEvery) {
+                        update(RENEW, partition, leaseSeconds);
+                        renewed = System.nanoTime();
+                    }
+                }
+            }
+            repository.updateTaxBatch(batch);
+            rows += batch.size();
+            update(FINISH, partition, rows);
+        } catch (LeaseLostException e) {
+            PARTITION_OP.recordError(start);
+            System.out.println(e.getMessage() + "; another worker is calculating it.");
+            return false;
+        } catch (SQLException | RuntimeException e) {
+            PARTITION_OP.recordError(start);
+            throw e;
+        }
+        PARTITION_OP.record(start, rows);
+        System.out.printf("%s calculated %s: %d records in %.2f s\n", owner, partition, rows,
+                          (System.nanoTime() - start) / 1_000_000_000.0);
+        return true;
+    }
+
+    private Stream<? extends Tax> records(Partition partition) {
+        if (partition.kind == RunningTotals.Category.PROPERTY) {
+            return repository.streamPropertiesAfter(partition.low)
+                             .takeWhile(property -> property.getId() <= partition.high);
+        }
+        // Integer.MIN_VALUE itself can't be passed as "after"; it means from the start
+        return repository.streamVehiclesAfter((int) Math.max(partition.low, Integer.MIN_VALUE))
+                         .takeWhile(vehicle -> vehicle.getRegistrationNumber() <= partition.high);
+    }
+
+    // RENEW or FINISH; the lease is lost if this worker no longer owns it
+    private void update(String sql, Partition partition, long value) throws SQLException {
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(sql);
+            stmt.setLong(1, value);
+            stmt.setString(2, partition.kind.name());
+            stmt.setInt(3, partition.number);
+            stmt.setString(4, owner);
+            if (stmt.executeUpdate() == 0) {
+                throw new LeaseLostException(partition);
+            }
+        }
+    }
+
+    // Splits the keys from MIN to MAX of a table into ranges of equal width
+    private static void split(Statement stmt, String keysQuery, RunningTotals.Category kind, int partitions,
+                              List<Partition> plan) throws SQLException {
+        long min, max;
+        try (ResultSet rs = stmt.executeQuery(keysQuery)) {
+            rs.next();
+            min = rs.getLong(1);
+            if (rs.wasNull()) {
+                return; // empty table
+            }
+            max = rs.getLong(2);
+        }
+        long low = min - 1;
+        long width = max - low;
+        int number = 0;
+        for (int i = 1; i <= partitions; i++) {
+            // min - 1 + width * i / partitions, without overflowing
+            long high = min - 1 + width / partitions * i + width % partitions * i / partitions;
+            if (high > low) {
+                plan.add(new Partition(kind, number++, low, high));
+                low = high;
+            }
+        }
+    }
+
+    // Unique among workers: the process id and the host name
+    private static String workerName() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown-host";
+        }
+        return ProcessHandle.current().pid() + "@" + host;
+    }
+}
@@ -0,0 +1,75 @@
+import java.sql.*;
+import java.util.*;
+
+// A connection borrowed from a ConnectionPool.
+// Closing it hands it back to the pool. Statements from prepare() are cached
+// by SQL text for the life of the physical connection, so callers must not close them.
+class PooledConnection implements AutoCloseable {
+    static final int STATEMENT_CACHE_SIZE = 32;
+
+    private final ConnectionPool pool;
+    private final Connection conn;
+    private final Map<String, PreparedStatement> statements =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > STATEMENT_CACHE_SIZE) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    private long lastUsedMillis = System.currentTimeMillis();
+
+    PooledConnection(ConnectionPool pool, Connection conn) {
+        this.pool = pool;
+        this.conn = conn;
+    }
+
+    Connection connection() {
+        return conn;
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null || stmt.isClosed()) {
+            stmt = conn.prepareStatement(sql);
+            statements.put(sql, stmt);
+        } else {
+            stmt.clearParameters();
+        }
+        return stmt;
+    }
+
+    long lastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+    void touch() {
+        lastUsedMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+
+    void closePhysical() {
+        statements.values().forEach(PooledConnection::closeQuietly);
+        statements.clear();
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // Already broken; nothing left to release.
+        }
+    }
+
+    private static void closeQuietly(Statement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            // Statement is being discarded anyway.
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.*;
+
+// Properties indexed by id, the counterpart of VehicleRegistry.
+// An open-addressing table of primitive long keys points into a list that
+// keeps the properties in insertion order.
+class PropertyRegistry implements Iterable<PropertyTax> {
+    private static final int EMPTY = 0; // slots hold list index + 1
+
+    private final List<PropertyTax> properties = new ArrayList<>();
+    private long[] keys;
+    private int[] slots;
+    private int mask;
+
+    PropertyRegistry() {
+        this(16);
+    }
+
+    PropertyRegistry(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    // Returns false, leaving the registry unchanged, if the id is taken
+    boolean add(PropertyTax property) {
+        long key = property.getId();
+        int i = probe(key);
+        if (slots[i] != EMPTY) {
+            return false;
+        }
+        properties.add(property);
+        keys[i] = key;
+        slots[i] = properties.size();
+        if (properties.size() * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    PropertyTax get(long id) {
+        int slot = slots[probe(id)];
+        return slot == EMPTY ? null : properties.get(slot - 1);
+    }
+
+    // Position in insertion order, or -1 if there is no property with this id
+    int indexOf(long id) {
+        return slots[probe(id)] - 1;
+    }
+
+    int size() {
+        return properties.size();
+    }
+
+    // Read-only view in insertion order
+    List<PropertyTax> asList() {
+        return Collections.unmodifiableList(properties);
+    }
+
+    @Override
+    public Iterator<PropertyTax> iterator() {
+        return asList().iterator();
+    }
+
+    // Slot holding the key, or the empty slot where it would go
+    private int probe(long key) {
+        int i = mix(key) & mask;
+        while (slots[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] != EMPTY) {
+                int i = probe(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+    }
+
+    // Spreads sequential ids across the table
+    private static int mix(long key) {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// PropertyTax Class
+class PropertyTax extends Tax {
+    private int baseValue;
+    private int builtUpArea;
+    private int age;
+    private char location;
+
+    public PropertyTax(int baseValue, int builtUpArea, int age, char location) {
+        super();
+        this.baseValue = baseValue;
+        this.builtUpArea = builtUpArea;
+        this.age = age;
+        this.location = location;
+    }
+
+    public PropertyTax(long id, int baseValue, int builtUpArea, int age, char location) {
+        super(id);
+        this.baseValue = baseValue;
+        this.builtUpArea = builtUpArea;
+        this.age = age;
+        this.location = location;
+    }
+
+    @Override
+    public void calculateTax() {
+        TaxRates rates = getRates();
+        long newTax;
+        try {
+            newTax = rates.propertyTax(baseValue, builtUpArea, age, location);
+        } catch (ArithmeticException e) { // too large for a long of paise
+            recordTax(rates.propertyTaxExact(baseValue, builtUpArea, age, location));
+            return;
+        }
+        if (newTax != TaxRates.NO_RATE) { // no rate for this location
+            recordTax(newTax);
+        }
+    }
+
+    @Override
+    protected RunningTotals.Category category() {
+        return RunningTotals.Category.PROPERTY;
+    }
+
+    static final int[] COLUMNS = { 5, 15, 10, 10, 10 };
+    static final String[] HEADERS = { "ID", "BuiltupArea", "Baseprice", "In City", "Property Tax" };
+
+    @Override
+    public void displayDetails() {
+        try (TableWriter table = TableWriter.toStdout(COLUMNS)) {
+            writeRow(table);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeRow(TableWriter table) throws IOException {
+        table.cell(id).cell(builtUpArea).cell(baseValue).cell(location).cell(getTax()).endRow();
+    }
+
+    public int getBaseValue() {
+        return baseValue;
+    }
+
+    public int getBuiltUpArea() {
+        return builtUpArea;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public char getLocation() {
+        return location;
+    }
+}
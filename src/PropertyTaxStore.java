@@ -0,0 +1,161 @@
+import java.math.BigDecimal;
+import java.util.*;
+
+// Columnar alternative to a List<PropertyTax> for very large registries.
+// Each field lives in its own primitive array, so a record costs 21 bytes
+// instead of a PropertyTax object plus its list reference. Ids are
+// assigned by the store (1, 2, 3, ...) and map directly to array slots.
+// Taxes are held in paise (see Money); the rare tax too large for a long
+// is kept in a map on the side.
+class PropertyTaxStore {
+    private static final byte LOCATION_UNKNOWN = 0;
+    private static final byte LOCATION_OUTSIDE = 1;
+    private static final byte LOCATION_CITY = 2;
+    private static final char[] LOCATION_CODES = { '?', 'N', 'Y' };
+
+    private int[] baseValue;
+    private int[] builtUpArea;
+    private int[] age;
+    private byte[] location;
+    private long[] tax;
+    private final Map<Integer, BigDecimal> largeTax = new HashMap<>(); // by index; tax[] holds 0 there
+    private int size;
+
+    PropertyTaxStore() {
+        this(1024);
+    }
+
+    PropertyTaxStore(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        baseValue = new int[capacity];
+        builtUpArea = new int[capacity];
+        age = new int[capacity];
+        location = new byte[capacity];
+        tax = new long[capacity];
+    }
+
+    // Returns the id of the new record
+    int add(int baseValue, int builtUpArea, int age, char location) {
+        if (size == this.baseValue.length) {
+            grow();
+        }
+        this.baseValue[size] = baseValue;
+        this.builtUpArea[size] = builtUpArea;
+        this.age[size] = age;
+        this.location[size] = encode(location);
+        return ++size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int id) {
+        return id > 0 && id <= size;
+    }
+
+    int getBaseValue(int id) {
+        return baseValue[index(id)];
+    }
+
+    int getBuiltUpArea(int id) {
+        return builtUpArea[index(id)];
+    }
+
+    int getAge(int id) {
+        return age[index(id)];
+    }
+
+    char getLocation(int id) {
+        return switch (location[index(id)]) {
+            case LOCATION_CITY -> 'Y';
+            case LOCATION_OUTSIDE -> 'N';
+            default -> '?';
+        };
+    }
+
+    double getTax(int id) {
+        int i = index(id);
+        BigDecimal large = largeTax.get(i);
+        return large != null ? large.doubleValue() : Money.toRupees(tax[i]);
+    }
+
+    void calculate(int id) {
+        calculate(Tax.getRates(), index(id));
+    }
+
+    // Tight loop over the columns with no per-record objects, so the JIT can unroll it
+    void calculateAll() {
+        int[] baseValue = this.baseValue, builtUpArea = this.builtUpArea, age = this.age;
+        byte[] location = this.location;
+        long[] tax = this.tax;
+        TaxRates rates = Tax.getRates();
+        largeTax.clear();
+        for (int i = 0; i < size; i++) {
+            try {
+                tax[i] = tax(rates, baseValue[i], builtUpArea[i], age[i], location[i]);
+            } catch (ArithmeticException e) {
+                calculateExact(rates, i);
+            }
+        }
+    }
+
+    BigDecimal totalTax() {
+        Money.Sum sum = new Money.Sum();
+        for (int i = 0; i < size; i++) {
+            sum.add(tax[i]);
+        }
+        largeTax.values().forEach(sum::add);
+        return sum.value();
+    }
+
+    private int index(int id) {
+        if (!contains(id)) {
+            throw new NoSuchElementException("Invalid Property ID: " + id);
+        }
+        return id - 1;
+    }
+
+    private void grow() {
+        int capacity = baseValue.length + (baseValue.length >> 1);
+        baseValue = Arrays.copyOf(baseValue, capacity);
+        builtUpArea = Arrays.copyOf(builtUpArea, capacity);
+        age = Arrays.copyOf(age, capacity);
+        location = Arrays.copyOf(location, capacity);
+        tax = Arrays.copyOf(tax, capacity);
+    }
+
+    private void calculate(TaxRates rates, int i) {
+        largeTax.remove(i);
+        try {
+            tax[i] = tax(rates, baseValue[i], builtUpArea[i], age[i], location[i]);
+        } catch (ArithmeticException e) { // too large for a long of paise
+            calculateExact(rates, i);
+        }
+    }
+
+    private void calculateExact(TaxRates rates, int i) {
+        BigDecimal exact = rates.propertyTaxExact(baseValue[i], builtUpArea[i], age[i], LOCATION_CODES[location[i]]);
+        if (Money.fitsPaise(exact)) {
+            tax[i] = exact.unscaledValue().longValue();
+        } else {
+            tax[i] = 0;
+            largeTax.put(i, exact);
+        }
+    }
+
+    // Same rates as PropertyTax.calculateTax(); a location without a rate gets no tax.
+    // Throws ArithmeticException if the tax doesn't fit in a long of paise.
+    private static long tax(TaxRates rates, int baseValue, int builtUpArea, int age, byte location) {
+        long tax = rates.propertyTax(baseValue, builtUpArea, age, LOCATION_CODES[location]);
+        return tax == TaxRates.NO_RATE ? 0 : tax;
+    }
+
+    private static byte encode(char location) {
+        return switch (location) {
+            case 'Y', 'y' -> LOCATION_CITY;
+            case 'N', 'n' -> LOCATION_OUTSIDE;
+            default -> LOCATION_UNKNOWN;
+        };
+    }
+}
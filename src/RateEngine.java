@@ -0,0 +1,140 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Loads rate rules from a file or the tax_rate table, compiles them and
+// installs the result with Tax.setRates(). watch() re-reads the source
+// periodically and on a change of date, so edited rates and rates that come
+// into effect are picked up without a restart. Installing is a single
+// reference swap: a calculation in flight finishes with the rates it started
+// with and never waits for a reload.
+//
+// File format, one rule per line, '#' starts a comment:
+//   kind  key  rate  [effective-from yyyy-mm-dd]  [fuel type name]
+//   fuel      2   0.11               Diesel
+//   fuel      4   0.02  2025-04-01   Electric
+//   location  Y   0.5
+//   age       50  0.9   2025-04-01
+class RateEngine implements Closeable {
+    static final long DEFAULT_WATCH_MILLIS = 10_000;
+
+    private static final String SELECT_RATES = "SELECT kind, rate_key, rate, effective_from, name FROM tax_rate";
+
+    interface Source {
+        List<TaxRates.Rule> read() throws IOException, SQLException;
+    }
+
+    private final Source source;
+    private final String description;
+    private ScheduledExecutorService watcher;
+
+    RateEngine(Source source, String description) {
+        this.source = source;
+        this.description = description;
+    }
+
+    static RateEngine forFile(Path file) {
+        return new RateEngine(() -> readFile(file), file.toString());
+    }
+
+    // The table is created by SchemaMigrations; while it is empty the built-in rates apply
+    static RateEngine forTable(ConnectionPool pool) {
+        return new RateEngine(() -> readTable(pool), "table tax_rate");
+    }
+
+    // Installs the rates for today if they differ from the current ones; returns the rates in use
+    synchronized TaxRates reload() throws IOException, SQLException {
+        List<TaxRates.Rule> rules = source.read();
+        LocalDate today = LocalDate.now();
+        TaxRates current = Tax.getRates();
+        if (!current.date().equals(today) || !current.rules().equals(rules)) {
+            current = TaxRates.compile(rules, today);
+            Tax.setRates(current);
+        }
+        return current;
+    }
+
+    // Calls reload() every periodMillis on a daemon thread. A failed reload
+    // keeps the rates in use and is retried at the next period.
+    synchronized void watch(long periodMillis) {
+        if (watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rate-engine-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (IOException | SQLException | RuntimeException e) {
+                System.err.println("Could not reload rates from " + description + ": " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    static List<TaxRates.Rule> readFile(Path file) throws IOException {
+        List<TaxRates.Rule> rules = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            String[] fields = (comment < 0 ? line : line.substring(0, comment)).trim().split("\\s+");
+            if (fields.length == 1 && fields[0].isEmpty()) {
+                continue;
+            }
+            try {
+                if (fields.length < 3) {
+                    throw new IllegalArgumentException("expected kind, key, rate, an optional date and name");
+                }
+                // A name starts with a letter, a date with a digit
+                boolean dated = fields.length > 3 && Character.isDigit(fields[3].charAt(0));
+                int nameFrom = dated ? 4 : 3;
+                String name = nameFrom < fields.length
+                    ? String.join(" ", Arrays.copyOfRange(fields, nameFrom, fields.length)) : null;
+                rules.add(TaxRates.rule(fields[0], fields[1], Double.parseDouble(fields[2]),
+                                        dated ? LocalDate.parse(fields[3]) : null, name));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new IOException(file + " line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return rules;
+    }
+
+    static List<TaxRates.Rule> readTable(ConnectionPool pool) throws SQLException {
+        List<TaxRates.Rule> rules = new ArrayList<>();
+        try (PooledConnection conn = pool.borrow();
+             ResultSet rs = conn.prepare(SELECT_RATES).executeQuery()) {
+            while (rs.next()) {
+                java.sql.Date effectiveFrom = rs.getDate("effective_from");
+                try {
+                    rules.add(TaxRates.rule(rs.getString("kind"), rs.getString("rate_key"), rs.getDouble("rate"),
+                                            effectiveFrom == null ? null : effectiveFrom.toLocalDate(),
+                                            rs.getString("name")));
+                } catch (IllegalArgumentException e) {
+                    throw new SQLException("Invalid row in tax_rate: " + e.getMessage(), e);
+                }
+            }
+        }
+        return rules;
+    }
+}
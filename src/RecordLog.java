@@ -0,0 +1,313 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Append-only log of fixed-width tax records in a memory-mapped file.
+// Every add or calculation appends the record's full state; on startup the
+// log is replayed and the last record for each id wins. compact() rewrites
+// the log with one record per live id.
+//
+// Record layout (64 bytes, big-endian):
+//   0  int    CRC32 of bytes 4-63
+//   4  byte   kind (1 property, 2 vehicle, 3 large tax; 0 marks the end of the log)
+//   5  byte   flags (bit 0: tax calculated, bit 1: the tax is in the preceding large tax record)
+//   6  byte   brand length
+//   7  byte   location (property) or fuel type (vehicle)
+//   8  long   id
+//   16 long   tax in paise (see Money)
+//   24 int    baseValue   | registrNo
+//   28 int    builtUpArea | velocity
+//   32 int    age         | seatCapacity
+//   36 int    0           | price
+//   40 byte[24] brand, UTF-8
+//
+// A tax too large for a long of paise goes in a large tax record appended
+// just before the record it belongs to:
+//   6  byte   length of the unscaled value
+//   8  long   id
+//   16 byte[48] unscaled value of the tax in rupees to Money.SCALE places, two's complement
+//
+// Logs written before taxes were kept in paise (TAXLOG01) held the tax as a
+// double at offset 16; they are replayed as such and then rewritten in this
+// format, see needsUpgrade().
+//
+// The file grows in zero-filled chunks, so the first slot with kind 0 is the
+// end of the log. A record whose checksum fails was torn by a crash mid-write;
+// it and anything after it is dropped and overwritten by the next append.
+class RecordLog implements Closeable {
+    static final int RECORD_SIZE = 64;
+    static final int MAX_BRAND_BYTES = 24;
+    static final int CHUNK_SIZE = 16 << 20;
+    static final long COMPACT_MIN_RECORDS = 1 << 16;
+
+    private static final long MAGIC = 0x5441584C4F473032L; // "TAXLOG02"
+    private static final long DOUBLE_TAX_MAGIC = 0x5441584C4F473031L; // "TAXLOG01"
+    private static final int HEADER_SIZE = RECORD_SIZE;
+    private static final int MAX_LARGE_TAX_BYTES = RECORD_SIZE - 16;
+    private static final byte PROPERTY = 1;
+    private static final byte VEHICLE = 2;
+    private static final byte LARGE_TAX = 3;
+    private static final byte CALCULATED = 1;
+    private static final byte HAS_LARGE_TAX = 2;
+
+    static class Replay {
+        long records;
+        long properties;
+        long vehicles;
+        boolean torn;
+
+        @Override
+        public String toString() {
+            return String.format("%d records replayed, %d properties, %d vehicles%s", records, properties, vehicles,
+                                 torn ? " (a torn record at the end was discarded)" : "");
+        }
+    }
+
+    private final Path file;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long end;
+    private boolean torn;
+    private boolean doubleTax; // a TAXLOG01 log
+
+    RecordLog(Path file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    // Loads every record into the given registries and moves the id allocator past them
+    synchronized Replay replay(PropertyRegistry properties, VehicleRegistry vehicles) {
+        Replay result = new Replay();
+        result.torn = torn;
+        long maxId = 0;
+        byte[] brand = new byte[MAX_BRAND_BYTES];
+        BigDecimal largeTax = null; // from a large tax record, for the record that follows it
+        long largeTaxId = 0;
+        for (long position = HEADER_SIZE; position < end; position += RECORD_SIZE) {
+            ByteBuffer chunk = chunks.get((int) (position / CHUNK_SIZE));
+            int offset = (int) (position % CHUNK_SIZE);
+            byte kind = chunk.get(offset + 4);
+            long id = chunk.getLong(offset + 8);
+            if (kind == LARGE_TAX) {
+                byte[] unscaled = new byte[chunk.get(offset + 6)];
+                chunk.get(offset + 16, unscaled);
+                largeTax = new BigDecimal(new BigInteger(unscaled), Money.SCALE);
+                largeTaxId = id;
+                continue;
+            }
+            byte flags = chunk.get(offset + 5);
+            boolean calculated = (flags & CALCULATED) != 0;
+            BigDecimal large = (flags & HAS_LARGE_TAX) != 0 && largeTaxId == id ? largeTax : null;
+            largeTax = null;
+            maxId = Math.max(maxId, id);
+            result.records++;
+
+            Tax entry;
+            if (kind == PROPERTY) {
+                PropertyTax property = properties.get(id);
+                if (property == null) {
+                    property = new PropertyTax(id, chunk.getInt(offset + 24), chunk.getInt(offset + 28),
+                                               chunk.getInt(offset + 32), (char) chunk.get(offset + 7));
+                    properties.add(property);
+                    result.properties++;
+                }
+                entry = property;
+            } else {
+                int registrNo = chunk.getInt(offset + 24);
+                VehicleTax vehicle = vehicles.get(registrNo);
+                if (vehicle == null) {
+                    int length = chunk.get(offset + 6);
+                    chunk.get(offset + 40, brand, 0, length);
+                    vehicle = new VehicleTax(id, registrNo, new String(brand, 0, length, StandardCharsets.UTF_8),
+                                             chunk.getInt(offset + 28), chunk.getInt(offset + 32));
+                    vehicles.add(vehicle);
+                    result.vehicles++;
+                }
+                vehicle.setTypeAndPrice(chunk.get(offset + 7) & 0xFF, chunk.getInt(offset + 36)); // types go up to 255
+                entry = vehicle;
+            }
+            if (!calculated) {
+                continue;
+            }
+            if (doubleTax) {
+                entry.restoreTax(chunk.getDouble(offset + 16));
+            } else if (large != null) {
+                entry.restoreTax(large);
+            } else {
+                entry.restoreTaxPaise(chunk.getLong(offset + 16));
+            }
+        }
+        Tax.getIdAllocator().advancePast(maxId);
+        return result;
+    }
+
+    synchronized void append(Tax entry) throws IOException {
+        if (doubleTax) {
+            throw new IOException(file + " must be upgraded before it is written to.");
+        }
+        if (entry.largeTax != null) {
+            byte[] unscaled = entry.largeTax.setScale(Money.SCALE).unscaledValue().toByteArray();
+            if (unscaled.length > MAX_LARGE_TAX_BYTES) {
+                throw new IllegalArgumentException("Tax " + entry.largeTax + " is too large for the record log.");
+            }
+            record.clear();
+            record.putInt(0).put(LARGE_TAX).put((byte) 0).put((byte) unscaled.length).put((byte) 0);
+            record.putLong(entry.getId()).put(unscaled);
+            write();
+        }
+        record.clear();
+        record.putInt(0);
+        if (entry instanceof PropertyTax property) {
+            record.put(PROPERTY).put(flags(property)).put((byte) 0).put((byte) property.getLocation());
+            record.putLong(property.getId()).putLong(property.taxPaise);
+            record.putInt(property.getBaseValue()).putInt(property.getBuiltUpArea()).putInt(property.getAge()).putInt(0);
+        } else {
+            VehicleTax vehicle = (VehicleTax) entry;
+            byte[] brand = vehicle.getBrand().getBytes(StandardCharsets.UTF_8);
+            if (brand.length > MAX_BRAND_BYTES) {
+                throw new IllegalArgumentException("Brand must be at most " + MAX_BRAND_BYTES + " bytes.");
+            }
+            record.put(VEHICLE).put(flags(vehicle)).put((byte) brand.length).put((byte) vehicle.getType());
+            record.putLong(vehicle.getId()).putLong(vehicle.taxPaise);
+            record.putInt(vehicle.getRegistrationNumber()).putInt(vehicle.getVelocity())
+                  .putInt(vehicle.getSeatCapacity()).putInt(vehicle.getPrice());
+            record.put(brand);
+        }
+        write();
+    }
+
+    // Checksums the record in the buffer and writes it at the end of the log
+    private void write() throws IOException {
+        Arrays.fill(record.array(), record.position(), RECORD_SIZE, (byte) 0);
+        crc.reset();
+        crc.update(record.array(), 4, RECORD_SIZE - 4);
+        record.putInt(0, (int) crc.getValue());
+
+        if (end + RECORD_SIZE > (long) chunks.size() * CHUNK_SIZE) {
+            mapChunk(chunks.size());
+        }
+        chunks.get((int) (end / CHUNK_SIZE)).put((int) (end % CHUNK_SIZE), record.array(), 0, RECORD_SIZE);
+        end += RECORD_SIZE;
+    }
+
+    synchronized void appendAll(Iterable<? extends Tax> entries) throws IOException {
+        for (Tax entry : entries) {
+            append(entry);
+        }
+    }
+
+    // True for a log written before taxes were kept in paise. It can be
+    // replayed, but must be rewritten with compact() before anything is appended.
+    synchronized boolean needsUpgrade() {
+        return doubleTax;
+    }
+
+    // Records in the log, including ones superseded by later records
+    synchronized long records() {
+        return (end - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    // True once most of the log is superseded records
+    boolean shouldCompact(long liveRecords) {
+        long records = records();
+        return records > COMPACT_MIN_RECORDS && records > 2 * liveRecords;
+    }
+
+    // Writes the live records to a new file and swaps it in with an atomic rename,
+    // so a crash leaves either the old log or the new one
+    synchronized void compact(Iterable<PropertyTax> properties, Iterable<VehicleTax> vehicles) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        Files.deleteIfExists(compacted);
+        try (RecordLog log = new RecordLog(compacted)) {
+            log.appendAll(properties);
+            log.appendAll(vehicles);
+        }
+        release();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+
+    // Forces written records to disk. Without it they still survive a crash of
+    // this process, since they are already in the page cache, but not a power loss.
+    synchronized void sync() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            sync();
+            release();
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        for (int i = 0; (long) i * CHUNK_SIZE < Math.max(size, 1); i++) {
+            mapChunk(i);
+        }
+        MappedByteBuffer first = chunks.get(0);
+        if (size == 0) {
+            first.putLong(0, MAGIC).putInt(8, RECORD_SIZE);
+        }
+        doubleTax = first.getLong(0) == DOUBLE_TAX_MAGIC;
+        if ((first.getLong(0) != MAGIC && !doubleTax) || first.getInt(8) != RECORD_SIZE) {
+            release();
+            throw new IOException(file + " is not a tax record log.");
+        }
+        end = scan();
+    }
+
+    // Finds the end of the log: the first empty slot or the first record that fails its checksum
+    private long scan() {
+        torn = false;
+        long limit = (long) chunks.size() * CHUNK_SIZE;
+        for (int c = 0; c < chunks.size(); c++) {
+            ByteBuffer view = chunks.get(c).duplicate();
+            for (int offset = c == 0 ? HEADER_SIZE : 0; offset < CHUNK_SIZE; offset += RECORD_SIZE) {
+                byte kind = view.get(offset + 4);
+                if (kind == 0 && view.getLong(offset + 8) == 0) {
+                    return (long) c * CHUNK_SIZE + offset;
+                }
+                crc.reset();
+                view.limit(offset + RECORD_SIZE).position(offset + 4);
+                crc.update(view);
+                view.limit(CHUNK_SIZE);
+                if ((kind != PROPERTY && kind != VEHICLE && kind != LARGE_TAX)
+                    || view.getInt(offset) != (int) crc.getValue()) {
+                    torn = true;
+                    return (long) c * CHUNK_SIZE + offset;
+                }
+            }
+        }
+        return limit;
+    }
+
+    // Mapping past the end of the file extends it with zeros
+    private void mapChunk(int index) throws IOException {
+        chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) index * CHUNK_SIZE, CHUNK_SIZE));
+    }
+
+    // The mappings are unmapped when collected; Linux allows renaming over a mapped file
+    private void release() throws IOException {
+        chunks.clear();
+        channel.close();
+        channel = null;
+    }
+
+    private static byte flags(Tax entry) {
+        return (byte) ((entry.calculated ? CALCULATED : 0) | (entry.largeTax != null ? HAS_LARGE_TAX : 0));
+    }
+}
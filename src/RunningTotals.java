@@ -0,0 +1,146 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-category tax totals kept up to date as records are calculated.
+// Every calculation swaps the record's old tax for its new one, so reading a
+// total is O(1). The adders are striped, so concurrent calculations don't contend.
+//
+// Totals are exact. Each amount in paise is split into its high 32 bits and
+// its low 32 bits, which are never negative, and each half has its own adder.
+// Since an old amount is taken out exactly as it was put in, the adders only
+// ever hold the halves of current taxes: a long can't overflow for fewer than
+// 2^31 records, however often they are recalculated.
+class RunningTotals {
+    enum Category { PROPERTY, VEHICLE }
+
+    static class Reconciliation {
+        final Category category;
+        final long countedRecords;
+        final long actualRecords;
+        final BigDecimal countedTax;
+        final BigDecimal actualTax;
+
+        Reconciliation(Category category, long countedRecords, long actualRecords,
+                       BigDecimal countedTax, BigDecimal actualTax) {
+            this.category = category;
+            this.countedRecords = countedRecords;
+            this.actualRecords = actualRecords;
+            this.countedTax = countedTax;
+            this.actualTax = actualTax;
+        }
+
+        BigDecimal drift() {
+            return countedTax.subtract(actualTax);
+        }
+
+        // Both sides are exact, so any difference is a real drift
+        boolean matches() {
+            return countedRecords == actualRecords && drift().signum() == 0;
+        }
+    }
+
+    private static final long LOW_MASK = 0xFFFF_FFFFL;
+
+    private final LongAdder[] counts = new LongAdder[Category.values().length];
+    private final LongAdder[] high = new LongAdder[Category.values().length];
+    private final LongAdder[] low = new LongAdder[Category.values().length];
+    private final BigDecimal[] large = new BigDecimal[Category.values().length]; // guarded by this
+
+    RunningTotals() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+            high[i] = new LongAdder();
+            low[i] = new LongAdder();
+            large[i] = BigDecimal.ZERO;
+        }
+    }
+
+    // Replaces a record's old tax with its new one. A tax is given as paise,
+    // or as a BigDecimal when it doesn't fit in a long (see Tax.largeTax).
+    void replace(Category category, long countDelta, long oldPaise, BigDecimal oldLarge,
+                 long newPaise, BigDecimal newLarge) {
+        int c = category.ordinal();
+        if (countDelta != 0) {
+            counts[c].add(countDelta);
+        }
+        long highDelta = (newPaise >> 32) - (oldPaise >> 32);
+        long lowDelta = (newPaise & LOW_MASK) - (oldPaise & LOW_MASK);
+        if (highDelta != 0) {
+            high[c].add(highDelta);
+        }
+        if (lowDelta != 0) {
+            low[c].add(lowDelta);
+        }
+        if (oldLarge != null || newLarge != null) {
+            BigDecimal delta = newLarge == null ? BigDecimal.ZERO : newLarge;
+            addLarge(c, oldLarge == null ? delta : delta.subtract(oldLarge));
+        }
+    }
+
+    // Counts a record that is already calculated, e.g. one loaded from storage
+    void add(Tax record) {
+        replace(record.category(), record.isCalculated() ? 1 : 0, 0, null, record.taxPaise, record.largeTax);
+    }
+
+    // Number of calculated records
+    long count(Category category) {
+        return counts[category.ordinal()].sum();
+    }
+
+    BigDecimal tax(Category category) {
+        int c = category.ordinal();
+        long highSum = high[c].sum();
+        long lowSum = low[c].sum();
+        BigDecimal paise;
+        if (Math.abs(highSum) < 1L << 30 && lowSum >= 0 && lowSum < 1L << 62) { // fits in a long
+            paise = Money.toBigDecimal((highSum << 32) + lowSum);
+        } else {
+            paise = new BigDecimal(BigInteger.valueOf(highSum).shiftLeft(32).add(BigInteger.valueOf(lowSum)),
+                                   Money.SCALE);
+        }
+        synchronized (this) {
+            return paise.add(large[c]);
+        }
+    }
+
+    // Compares the counters with a full recompute and then resets them to it.
+    // Meant to run while no calculations are in flight.
+    Reconciliation reconcile(Category category, Iterable<? extends Tax> records) {
+        Money.Sum actualTax = new Money.Sum();
+        long actualRecords = 0;
+        for (Tax record : records) {
+            actualTax.add(record);
+            if (record.calculated) {
+                actualRecords++;
+            }
+        }
+        return reconcile(category, actualRecords, actualTax.value());
+    }
+
+    // Same, for actual values computed elsewhere, e.g. by the database
+    Reconciliation reconcile(Category category, long actualRecords, BigDecimal actualTax) {
+        int c = category.ordinal();
+        Reconciliation result = new Reconciliation(category, count(category), actualRecords,
+                                                   tax(category), actualTax);
+        counts[c].reset();
+        counts[c].add(actualRecords);
+        high[c].reset();
+        low[c].reset();
+        synchronized (this) {
+            large[c] = BigDecimal.ZERO;
+        }
+        BigDecimal rounded = Money.round(actualTax);
+        if (Money.fitsPaise(rounded)) {
+            replace(category, 0, 0, null, rounded.unscaledValue().longValue(), null);
+        } else {
+            addLarge(c, rounded);
+        }
+        return result;
+    }
+
+    private synchronized void addLarge(int c, BigDecimal amount) {
+        large[c] = large[c].add(amount);
+    }
+}
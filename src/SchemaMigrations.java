@@ -0,0 +1,337 @@
+import java.sql.*;
+import java.util.*;
+
+// Versioned schema of every table the application uses. Each migration runs
+// once per database, in version order, and is recorded in the schema_version
+// table. Steps check what is already there (tables, columns, indexes) rather
+// than assume, so a database created before the migrations existed, or two
+// processes migrating at once, end up with the same schema.
+//
+// An optional migration only runs once its option is turned on, with
+// "option = true" in the database config file (see options()); it is then
+// applied and recorded like any other. partitionPropertiesById() runs only
+// when asked for. checkIndexUse() asks the database, with EXPLAIN, whether
+// statements use the indexes they should.
+final class SchemaMigrations {
+    private static final String CREATE_VERSION_TABLE =
+        "CREATE TABLE IF NOT EXISTS schema_version (version INT PRIMARY KEY, description VARCHAR(255) NOT NULL,"
+        + " applied_at TIMESTAMP NOT NULL)";
+    private static final String SELECT_VERSIONS = "SELECT version FROM schema_version";
+    private static final String INSERT_VERSION =
+        "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, CURRENT_TIMESTAMP)";
+
+    private interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    // Option of the covering indexes for the reports
+    static final String REPORT_INDEXES = "report-indexes";
+
+    static final class Migration {
+        final int version;
+        final String description;
+        final String option; // turns the migration on; null if it always runs
+        private final Step step;
+
+        private Migration(int version, String description, Step step) {
+            this(version, description, null, step);
+        }
+
+        private Migration(int version, String description, String option, Step step) {
+            this.version = version;
+            this.description = description;
+            this.option = option;
+            this.step = step;
+        }
+
+        @Override
+        public String toString() {
+            return version + ": " + description;
+        }
+    }
+
+    // In version order; append new ones, never change applied ones
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "create property_tax and vehicle_tax", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS property_tax (id BIGINT PRIMARY KEY, base_value INT,"
+                                   + " built_up_area INT, age INT, location CHAR(1), tax DECIMAL(20, 2))");
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS vehicle_tax (registration_number INT PRIMARY KEY,"
+                                   + " brand VARCHAR(64), velocity INT, seat_capacity INT, type INT, price INT,"
+                                   + " tax DECIMAL(20, 2))");
+            }
+        }),
+        // Tables created by hand before version 1 may lack the keys finds and updates go by
+        new Migration(2, "unique indexes on property_tax.id and vehicle_tax.registration_number", conn -> {
+            createIndex(conn, "property_tax", "ux_property_id", true, "id");
+            createIndex(conn, "vehicle_tax", "ux_vehicle_registration_number", true, "registration_number");
+        }),
+        // Tables 3 to 6 were created on first use before they had migrations
+        new Migration(3, "create tax_change, the change log", conn -> execute(conn,
+            "CREATE TABLE IF NOT EXISTS tax_change (seq BIGINT AUTO_INCREMENT PRIMARY KEY, kind VARCHAR(16) NOT NULL,"
+            + " record_key BIGINT NOT NULL)")),
+        new Migration(4, "create tax_id_sequence", conn -> execute(conn,
+            "CREATE TABLE IF NOT EXISTS tax_id_sequence (name VARCHAR(64) PRIMARY KEY, next_value BIGINT NOT NULL)")),
+        new Migration(5, "create tax_rate, with the fuel type name", conn -> {
+            execute(conn, "CREATE TABLE IF NOT EXISTS tax_rate (kind VARCHAR(16) NOT NULL,"
+                          + " rate_key VARCHAR(16) NOT NULL, rate DOUBLE NOT NULL, effective_from DATE,"
+                          + " name VARCHAR(32))");
+            if (!hasColumn(conn, "tax_rate", "name")) {
+                execute(conn, "ALTER TABLE tax_rate ADD COLUMN name VARCHAR(32)");
+            }
+        }),
+        new Migration(6, "create calculation_lease", conn -> execute(conn,
+            "CREATE TABLE IF NOT EXISTS calculation_lease (kind VARCHAR(16) NOT NULL, partition_no INT NOT NULL,"
+            + " low_key BIGINT NOT NULL, high_key BIGINT NOT NULL, owner VARCHAR(128), expires_at TIMESTAMP NULL,"
+            + " finished BOOLEAN NOT NULL DEFAULT FALSE, row_count BIGINT NOT NULL DEFAULT 0,"
+            + " PRIMARY KEY (kind, partition_no))")),
+        // For databases that run the reports more often than they store taxes:
+        // the reports group by these columns and sum tax, and the totals count
+        // and sum tax, so all of them can read these indexes instead of the
+        // rows. But every tax stored then moves an entry in each of them. On
+        // H2, storing 300,000 taxes took 3.7 s without them and 14 s with all
+        // four, while the running totals and the cached reports seldom query
+        // at all. Turning the option off again keeps the indexes.
+        new Migration(7, "covering indexes for the reports", REPORT_INDEXES, conn -> {
+            createIndex(conn, "property_tax", "ix_property_location_tax", false, "location", "tax");
+            createIndex(conn, "property_tax", "ix_property_age_tax", false, "age", "tax");
+            createIndex(conn, "vehicle_tax", "ix_vehicle_type_tax", false, "type", "tax");
+            createIndex(conn, "vehicle_tax", "ix_vehicle_brand_tax", false, "brand", "tax");
+        }));
+
+    private SchemaMigrations() {
+    }
+
+    // The options turned on in a config file of key = value lines
+    static Set<String> options(Properties config) {
+        Set<String> options = new HashSet<>();
+        for (Migration migration : MIGRATIONS) {
+            if (migration.option != null && Boolean.parseBoolean(config.getProperty(migration.option, "").trim())) {
+                options.add(migration.option);
+            }
+        }
+        return options;
+    }
+
+    // Applies the migrations the database doesn't have yet, skipping optional
+    // ones whose option isn't in options; returns them
+    static List<Migration> migrate(ConnectionPool pool, Set<String> options) throws SQLException {
+        List<Migration> applied = new ArrayList<>();
+        try (PooledConnection conn = pool.borrow()) {
+            Connection db = conn.connection();
+            try (Statement stmt = db.createStatement()) {
+                stmt.executeUpdate(CREATE_VERSION_TABLE);
+            }
+            // By version rather than the highest one, as a skipped optional migration can be applied later
+            Set<Integer> done = versions(conn);
+            for (Migration migration : MIGRATIONS) {
+                if (done.contains(migration.version)
+                    || (migration.option != null && !options.contains(migration.option))) {
+                    continue;
+                }
+                migration.step.apply(db);
+                PreparedStatement stmt = conn.prepare(INSERT_VERSION);
+                stmt.setInt(1, migration.version);
+                stmt.setString(2, migration.description);
+                try {
+                    stmt.executeUpdate();
+                    applied.add(migration);
+                } catch (SQLException e) {
+                    // Another process applied it at the same time; the steps are safe to repeat
+                    if (!versions(conn).contains(migration.version)) {
+                        throw e;
+                    }
+                }
+            }
+        }
+        return applied;
+    }
+
+    // Runs EXPLAIN on each statement, by description, with every parameter
+    // bound to 0; returns a warning for each lookup that scans its table
+    // instead of finding its rows through an index, and for each scan that
+    // reads table rows instead of just an index. Plans in a format not known
+    // here are taken as fine.
+    static List<String> checkIndexUse(ConnectionPool pool, Map<String, String> lookups, Map<String, String> scans)
+            throws SQLException {
+        List<String> warnings = new ArrayList<>();
+        try (PooledConnection conn = pool.borrow()) {
+            check(conn, lookups, true, " does not use an index (", warnings);
+            check(conn, scans, false, " does not read just an index (", warnings);
+        }
+        return warnings;
+    }
+
+    private static void check(PooledConnection conn, Map<String, String> statements, boolean lookup, String problem,
+                              List<String> warnings) throws SQLException {
+        for (Map.Entry<String, String> statement : statements.entrySet()) {
+            try (PreparedStatement stmt = conn.connection().prepareStatement("EXPLAIN " + statement.getValue())) {
+                // Counted rather than asked for; not every driver reports parameter metadata
+                long parameters = statement.getValue().chars().filter(c -> c == '?').count();
+                for (int i = 1; i <= parameters; i++) {
+                    stmt.setInt(i, 0);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    String scan = tableScan(rs, lookup);
+                    if (scan != null) {
+                        warnings.add(statement.getKey() + problem + scan + ")");
+                    }
+                }
+            }
+        }
+    }
+
+    // MySQL only: splits property_tax into partitions of rangeSize ids each,
+    // up to a few ranges past the highest id, plus one for all higher ids.
+    // Repeating it re-partitions the table, e.g. once most ids are past the
+    // last range. Each id range can then be scanned and maintained on its own.
+    static int partitionPropertiesById(ConnectionPool pool, long rangeSize) throws SQLException {
+        if (rangeSize <= 0) {
+            throw new IllegalArgumentException("Range size must be positive.");
+        }
+        try (PooledConnection conn = pool.borrow();
+             Statement stmt = conn.connection().createStatement()) {
+            String product = conn.connection().getMetaData().getDatabaseProductName();
+            if (!product.contains("MySQL") && !product.contains("MariaDB")) {
+                throw new SQLFeatureNotSupportedException("Range partitioning needs MySQL, not " + product + ".");
+            }
+            long maxId;
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM property_tax")) {
+                rs.next();
+                maxId = rs.getLong(1);
+            }
+            int ranges = (int) Math.min(1000, maxId / rangeSize + 4);
+            StringBuilder sql = new StringBuilder("ALTER TABLE property_tax PARTITION BY RANGE (id) (");
+            for (int i = 1; i <= ranges; i++) {
+                sql.append("PARTITION p").append(i).append(" VALUES LESS THAN (").append(i * rangeSize).append("), ");
+            }
+            sql.append("PARTITION p_rest VALUES LESS THAN MAXVALUE)");
+            stmt.executeUpdate(sql.toString());
+            return ranges + 1;
+        }
+    }
+
+    private static Set<Integer> versions(PooledConnection conn) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (ResultSet rs = conn.prepare(SELECT_VERSIONS).executeQuery()) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        boolean upper = meta.storesUpperCaseIdentifiers();
+        try (ResultSet rs = meta.getColumns(conn.getCatalog(), conn.getSchema(),
+                                            upper ? table.toUpperCase(Locale.ROOT) : table,
+                                            upper ? column.toUpperCase(Locale.ROOT) : column)) {
+            return rs.next();
+        }
+    }
+
+    // Unless an index on these leading columns exists already, under any name
+    // (a primary key counts as a unique index); returns 1 if it created one
+    private static int createIndex(Connection conn, String table, String name, boolean unique, String... columns)
+            throws SQLException {
+        if (hasIndex(conn, table, unique, columns)) {
+            return 0;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + name + " ON " + table
+                               + " (" + String.join(", ", columns) + ")");
+            return 1;
+        } catch (SQLException e) {
+            if (!hasIndex(conn, table, unique, columns)) { // else created by another process meanwhile
+                throw e;
+            }
+            return 0;
+        }
+    }
+
+    // A unique index must be on exactly these columns; any other may have more after them
+    private static boolean hasIndex(Connection conn, String table, boolean unique, String... columns)
+            throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        String tableName = meta.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        Map<String, SortedMap<Short, String>> indexes = new HashMap<>();
+        Set<String> uniqueIndexes = new HashSet<>();
+        try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), conn.getSchema(), tableName, false, false)) {
+            while (rs.next()) {
+                String index = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (index == null || column == null) {
+                    continue; // table statistics
+                }
+                indexes.computeIfAbsent(index, k -> new TreeMap<>()).put(rs.getShort("ORDINAL_POSITION"), column);
+                if (!rs.getBoolean("NON_UNIQUE")) {
+                    uniqueIndexes.add(index);
+                }
+            }
+        }
+        for (Map.Entry<String, SortedMap<Short, String>> index : indexes.entrySet()) {
+            List<String> indexColumns = new ArrayList<>(index.getValue().values());
+            if (unique && (!uniqueIndexes.contains(index.getKey()) || indexColumns.size() != columns.length)) {
+                continue;
+            }
+            if (indexColumns.size() >= columns.length && startsWith(indexColumns, columns)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(List<String> indexColumns, String[] columns) {
+        for (int i = 0; i < columns.length; i++) {
+            if (!indexColumns.get(i).equalsIgnoreCase(columns[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // How the plan reads a table without an index lookup, or for a scan
+    // (lookup false) without just an index, or null if it doesn't.
+    // MySQL returns a row per table with the index in "key" and ALL (rows) or
+    // index (index entries) as the "type" of a full scan. H2 returns the plan
+    // as text with a comment per table: "index: condition" for a lookup, just
+    // the index or tableScan for a full scan.
+    private static String tableScan(ResultSet rs, boolean lookup) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int keyColumn = 0;
+        int typeColumn = 0;
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            if (meta.getColumnLabel(i).equalsIgnoreCase("key")) {
+                keyColumn = i;
+            } else if (meta.getColumnLabel(i).equalsIgnoreCase("type")) {
+                typeColumn = i;
+            }
+        }
+        while (rs.next()) {
+            if (keyColumn > 0) {
+                String type = typeColumn > 0 ? rs.getString(typeColumn) : null;
+                String key = rs.getString(keyColumn);
+                if (key == null || "ALL".equalsIgnoreCase(type) || (lookup && "index".equalsIgnoreCase(type))) {
+                    return "type " + type + ", key " + key;
+                }
+            } else if (rs.getString(1) != null) {
+                String plan = rs.getString(1);
+                for (int from = plan.indexOf("/*"); from >= 0; from = plan.indexOf("/*", from + 2)) {
+                    int to = plan.indexOf("*/", from);
+                    String access = plan.substring(from + 2, to < 0 ? plan.length() : to).trim();
+                    if (access.endsWith(".tableScan") || (lookup && !access.contains(":"))) {
+                        return "scan of " + access;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+import java.sql.*;
+
+// IdAllocator backed by a row in the tax_id_sequence table, so ids stay unique
+// across every process sharing the database. Ids are reserved a range at a
+// time and handed out from memory until the range runs out.
+class SequenceIdAllocator implements IdAllocator {
+    static final int DEFAULT_RANGE_SIZE = 100;
+
+    private static final String INSERT_SEQUENCE = "INSERT INTO tax_id_sequence (name, next_value) VALUES (?, 1)";
+    private static final String SELECT_FOR_UPDATE = "SELECT next_value FROM tax_id_sequence WHERE name = ? FOR UPDATE";
+    private static final String RESERVE = "UPDATE tax_id_sequence SET next_value = next_value + ? WHERE name = ?";
+    private static final String ADVANCE = "UPDATE tax_id_sequence SET next_value = GREATEST(next_value, ?) WHERE name = ?";
+
+    private final ConnectionPool pool;
+    private final String table;
+    private final int rangeSize;
+    private long next;
+    private long end;
+
+    // The sequence is named after the table whose ids it supplies
+    SequenceIdAllocator(ConnectionPool pool, String table, int rangeSize) {
+        if (rangeSize <= 0) {
+            throw new IllegalArgumentException("Range size must be positive.");
+        }
+        this.pool = pool;
+        this.table = table;
+        this.rangeSize = rangeSize;
+    }
+
+    // Creates the sequence if needed and moves it past the table's current ids.
+    // The tax_id_sequence table must exist; see SchemaMigrations.
+    void initialize() throws SQLException {
+        try (PooledConnection conn = pool.borrow()) {
+            try {
+                PreparedStatement insert = conn.prepare(INSERT_SEQUENCE);
+                insert.setString(1, table);
+                insert.executeUpdate();
+            } catch (SQLException e) {
+                // SQLState class 23: the sequence row already exists
+                if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+                    throw e;
+                }
+            }
+            try (Statement stmt = conn.connection().createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+                rs.next();
+                advancePast(conn, rs.getLong(1));
+            }
+        }
+    }
+
+    @Override
+    public synchronized long nextId() {
+        if (next == end) {
+            try {
+                reserveRange();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not reserve ids for " + table, e);
+            }
+        }
+        return next++;
+    }
+
+    @Override
+    public synchronized void advancePast(long id) {
+        try (PooledConnection conn = pool.borrow()) {
+            advancePast(conn, id);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not advance the id sequence for " + table, e);
+        }
+        if (end <= id + 1) {
+            next = end; // drop the stale range
+        } else if (next <= id) {
+            next = id + 1;
+        }
+    }
+
+    private void advancePast(PooledConnection conn, long id) throws SQLException {
+        PreparedStatement stmt = conn.prepare(ADVANCE);
+        stmt.setLong(1, id + 1);
+        stmt.setString(2, table);
+        stmt.executeUpdate();
+    }
+
+    // Row lock on the sequence keeps concurrent processes from reserving the same range
+    private void reserveRange() throws SQLException {
+        try (PooledConnection conn = pool.borrow()) {
+            Connection db = conn.connection();
+            db.setAutoCommit(false);
+            try {
+                PreparedStatement select = conn.prepare(SELECT_FOR_UPDATE);
+                select.setString(1, table);
+                long start;
+                try (ResultSet rs = select.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("Id sequence " + table + " has not been initialized.");
+                    }
+                    start = rs.getLong(1);
+                }
+                PreparedStatement reserve = conn.prepare(RESERVE);
+                reserve.setInt(1, rangeSize);
+                reserve.setString(2, table);
+                reserve.executeUpdate();
+                db.commit();
+                next = start;
+                end = start + rangeSize;
+            } catch (SQLException e) {
+                db.rollback();
+                throw e;
+            }
+        }
+    }
+}
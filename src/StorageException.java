@@ -0,0 +1,9 @@
+// A TaxRepository could not read or write its storage. Unchecked so that
+// record streams can raise it too; the menus catch it and carry on.
+class StorageException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public StorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
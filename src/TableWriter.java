@@ -0,0 +1,183 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+
+// Fixed-width table output without printf. Column widths are fixed up front,
+// cells are formatted straight into one reusable buffer, and the buffer goes
+// to the underlying writer in large chunks instead of once per row.
+// Cells are right-aligned and separated by one space, so a row prints
+// exactly what printf("%5d %15s %10.2f\n", ...) would.
+class TableWriter implements Closeable, Flushable {
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] SPACES = new char[64];
+    static {
+        Arrays.fill(SPACES, ' ');
+    }
+
+    private final Writer out;
+    private final boolean closeOut;
+    private final int[] widths;
+    private final StringBuilder buffer = new StringBuilder(256);
+    private char[] chunk;
+    private int column;
+
+    TableWriter(Writer out, boolean closeOut, int... widths) {
+        this.out = out;
+        this.closeOut = closeOut;
+        this.widths = widths.clone();
+    }
+
+    // Writes through System.out; close() flushes but leaves System.out open
+    static TableWriter toStdout(int... widths) {
+        return new TableWriter(new OutputStreamWriter(System.out), false, widths);
+    }
+
+    // UTF-8, whatever the platform charset, like the app's other files
+    static TableWriter toFile(Path file, int... widths) throws IOException {
+        return new TableWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), true, widths);
+    }
+
+    // A row of column titles
+    TableWriter header(String... titles) throws IOException {
+        for (String title : titles) {
+            cell(title);
+        }
+        return endRow();
+    }
+
+    // Text outside the table layout, such as a separator line
+    TableWriter line(String text) throws IOException {
+        buffer.append(text).append('\n');
+        return flushIfFull();
+    }
+
+    TableWriter cell(long value) {
+        int start = startCell();
+        buffer.append(value);
+        return pad(start);
+    }
+
+    TableWriter cell(char value) {
+        int start = startCell();
+        buffer.append(value);
+        return pad(start);
+    }
+
+    TableWriter cell(String value) {
+        int start = startCell();
+        buffer.append(value);
+        return pad(start);
+    }
+
+    // Two decimal places, rounded the way %.2f rounds
+    TableWriter cell(double value) {
+        int start = startCell();
+        appendTwoDecimals(value);
+        return pad(start);
+    }
+
+    TableWriter endRow() throws IOException {
+        if (column != widths.length) {
+            throw new IllegalStateException("Row has " + column + " cells but the table has " + widths.length + " columns.");
+        }
+        column = 0;
+        buffer.append('\n');
+        return flushIfFull();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeOut) {
+            drain();
+            out.close();
+        } else {
+            flush();
+        }
+    }
+
+    private int startCell() {
+        if (column == widths.length) {
+            throw new IllegalStateException("Row already has " + widths.length + " cells.");
+        }
+        if (column > 0) {
+            buffer.append(' ');
+        }
+        return buffer.length();
+    }
+
+    // Right-aligns the cell that starts at start; wider values are not truncated, as with printf
+    private TableWriter pad(int start) {
+        int missing = widths[column++] - (buffer.length() - start);
+        while (missing > 0) {
+            int n = Math.min(missing, SPACES.length);
+            buffer.insert(start, SPACES, 0, n);
+            missing -= n;
+        }
+        return this;
+    }
+
+    // Formatter rounds the shortest decimal form of the double (Double.toString) half-up.
+    // For ordinary amounts scaling by 100 and rounding gives the same digits, except when
+    // the scaled value lands next to .5, where the BigDecimal path decides exactly.
+    private void appendTwoDecimals(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            buffer.append(value);
+            return;
+        }
+        if (Double.doubleToRawLongBits(value) < 0) {
+            buffer.append('-');
+            value = -value;
+        }
+        if (value < 1e9) {
+            double scaled = value * 100;
+            long cents = (long) scaled;
+            double fraction = scaled - cents;
+            if (Math.abs(fraction - 0.5) > 1e-3) {
+                if (fraction > 0.5) {
+                    cents++;
+                }
+                long fractionDigits = cents % 100;
+                buffer.append(cents / 100).append('.');
+                if (fractionDigits < 10) {
+                    buffer.append('0');
+                }
+                buffer.append(fractionDigits);
+                return;
+            }
+        }
+        buffer.append(BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).toPlainString());
+    }
+
+    private TableWriter flushIfFull() throws IOException {
+        if (buffer.length() >= BUFFER_SIZE) {
+            drain();
+        }
+        return this;
+    }
+
+    private void drain() throws IOException {
+        int length = buffer.length();
+        if (length == 0) {
+            return;
+        }
+        if (chunk == null || chunk.length < Math.min(length, BUFFER_SIZE)) {
+            chunk = new char[Math.min(Math.max(length, 256), BUFFER_SIZE)];
+        }
+        for (int offset = 0; offset < length; offset += chunk.length) {
+            int n = Math.min(chunk.length, length - offset);
+            buffer.getChars(offset, offset + n, chunk, 0);
+            out.write(chunk, 0, n);
+        }
+        buffer.setLength(0);
+    }
+}
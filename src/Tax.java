@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+// Base Tax Class
+abstract class Tax {
+    private static volatile IdAllocator idAllocator = new BlockIdAllocator();
+    private static volatile TaxRates rates = TaxRates.DEFAULT;
+    protected long id;
+    protected long taxPaise;        // see Money
+    protected BigDecimal largeTax;  // the tax instead of taxPaise when it doesn't fit in a long
+    protected boolean calculated;
+    private RunningTotals totals; // set by the repository that holds this record
+
+    public Tax() {
+        this(idAllocator.nextId());
+    }
+
+    // For records that already have an id, e.g. ones loaded from storage
+    protected Tax(long id) {
+        this.id = id; // Initially, the tax is not calculated
+    }
+
+    static IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    static void setIdAllocator(IdAllocator allocator) {
+        idAllocator = Objects.requireNonNull(allocator);
+    }
+
+    // Read once per calculation, so a reload never changes rates half-way through one
+    static TaxRates getRates() {
+        return rates;
+    }
+
+    static void setRates(TaxRates newRates) {
+        rates = Objects.requireNonNull(newRates);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public abstract void calculateTax();
+
+    public abstract void displayDetails();
+
+    // Writes this record as one row of its table; see the COLUMNS of each subclass
+    public abstract void writeRow(TableWriter table) throws IOException;
+
+    protected abstract RunningTotals.Category category();
+
+    // From now on changes to this record's tax are applied to totals.
+    // Its current tax must already be counted there.
+    void track(RunningTotals totals) {
+        this.totals = totals;
+    }
+
+    // Stores a newly calculated tax in paise and applies the change to the running totals
+    protected void recordTax(long newPaise) {
+        record(newPaise, null);
+    }
+
+    // Same, for a tax calculated in BigDecimal; it is rounded to paise
+    protected void recordTax(BigDecimal newTax) {
+        BigDecimal rounded = Money.round(newTax);
+        if (Money.fitsPaise(rounded)) {
+            record(rounded.unscaledValue().longValue(), null);
+        } else {
+            record(0, rounded);
+        }
+    }
+
+    private void record(long newPaise, BigDecimal newLargeTax) {
+        if (totals != null) {
+            totals.replace(category(), calculated ? 0 : 1, taxPaise, largeTax, newPaise, newLargeTax);
+        }
+        this.taxPaise = newPaise;
+        this.largeTax = newLargeTax;
+        this.calculated = true;
+    }
+
+    // Takes the record's tax back out of the running totals, e.g. when it is removed
+    public void retire() {
+        if (calculated) {
+            if (totals != null) {
+                totals.replace(category(), -1, taxPaise, largeTax, 0, null);
+            }
+            this.calculated = false;
+            this.taxPaise = 0;
+            this.largeTax = null;
+        }
+    }
+
+    // The nearest double to the tax, for display and double columns
+    public double getTax() {
+        return largeTax != null ? largeTax.doubleValue() : Money.toRupees(taxPaise);
+    }
+
+    // The exact tax, in rupees to two decimal places
+    public BigDecimal getTaxAmount() {
+        return largeTax != null ? largeTax : Money.toBigDecimal(taxPaise);
+    }
+
+    // Sets the tax of a record loaded from storage that holds doubles
+    void restoreTax(double tax) {
+        if (Money.isExactAsDouble(tax)) {
+            recordTax(Money.paise(tax));
+        } else {
+            recordTax(new BigDecimal(tax));
+        }
+    }
+
+    void restoreTax(BigDecimal tax) {
+        recordTax(tax);
+    }
+
+    // Sets the tax of a record loaded from storage that holds paise
+    void restoreTaxPaise(long paise) {
+        recordTax(paise);
+    }
+
+    // True while the record still has no calculated tax
+    public boolean isPending() {
+        return !calculated;
+    }
+
+    public boolean isCalculated() {
+        return calculated;
+    }
+}
@@ -0,0 +1,26 @@
+import java.nio.file.*;
+import java.util.*;
+
+// Runs the application against the database configured in tax-db.conf, or
+// against the MySQL database if there is no such file. Same as
+//   AppTester --db tax-db.conf [--rates ratesFile] [--http [port]]
+//             [--metrics metricsFile [seconds]]
+//             [--plan partitions | --work [leaseSeconds] | --calculate-changes
+//              | --partition-by-id rangeSize] [--export directory]
+public class TaxApp {
+    private static final String DB_CONFIG_FILE = "tax-db.conf";
+    private static final String DB_URL = "jdbc:mysql://localhost:3306/tax_db";
+    private static final String DB_USER = "root";
+    private static final String DB_PASSWORD = "root";
+
+    // Usage: TaxApp [--rates ratesFile] [--http [port]] [--metrics metricsFile [seconds]]
+    //               [--plan partitions | --work [leaseSeconds] | --calculate-changes
+    //                | --partition-by-id rangeSize] [--export directory]
+    public static void main(String[] args) {
+        List<String> options = Files.exists(Paths.get(DB_CONFIG_FILE))
+            ? new ArrayList<>(List.of("--db", DB_CONFIG_FILE))
+            : new ArrayList<>(List.of("--jdbc", DB_URL, DB_USER, DB_PASSWORD));
+        options.addAll(List.of(args));
+        AppTester.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,383 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// Exports the calculated records of a repository as gzip-compressed CSV, one
+// file per category, in a pipeline of three stages:
+//   the caller's thread reads records (a page at a time from the database)
+//   and hands them on in batches;
+//   a serializer thread formats them as CSV straight into byte chunks;
+//   compressor threads gzip chunks in parallel, and a writer thread appends
+//   them to the file in order.
+// Each compressed chunk is a complete gzip member; gzip, zcat and
+// GZIPInputStream read the concatenation as one stream.
+//
+// The stages are joined by bounded queues, so a slow stage holds up the ones
+// before it, and memory use does not depend on the number of records.
+// The file is written under a temporary name and moved into place once
+// complete, so a failed export leaves no partial file behind.
+class TaxExporter {
+    static final int BATCH_SIZE = 4096;     // records per hand-off to the serializer
+    static final int CHUNK_SIZE = 1 << 20;  // bytes of CSV per gzip member
+    static final int QUEUE_DEPTH = 4;       // batches waiting for the serializer
+    static final String PROPERTY_HEADER = "id,base_value,built_up_area,age,location,tax";
+    static final String VEHICLE_HEADER = "registration_number,brand,velocity,seat_capacity,type,price,tax";
+
+    private static final Metrics.Operation EXPORT_OP = Metrics.operation("export");
+    private static final List<Tax> END = List.of(); // after the last batch
+
+    static class Result {
+        long rows;
+        long bytes;
+        long compressedBytes;
+        double seconds;
+
+        @Override
+        public String toString() {
+            return String.format("%d rows, %.1f MB of CSV compressed to %.1f MB in %.2f s (%.0f rows/s)", rows,
+                                 bytes / 1e6, compressedBytes / 1e6, seconds, rows / Math.max(seconds, 1e-9));
+        }
+    }
+
+    // Appends one record as a CSV line
+    private interface RowFormat<T extends Tax> {
+        void append(Chunk chunk, T record);
+    }
+
+    private final int compressors;
+
+    TaxExporter(int compressors) {
+        if (compressors <= 0) {
+            throw new IllegalArgumentException("Need at least one compressor thread.");
+        }
+        this.compressors = compressors;
+    }
+
+    Result exportProperties(TaxRepository repository, Path file) throws IOException {
+        try (Stream<PropertyTax> properties = repository.streamAllProperties()) {
+            return exportProperties(properties, file);
+        }
+    }
+
+    Result exportVehicles(TaxRepository repository, Path file) throws IOException {
+        try (Stream<VehicleTax> vehicles = repository.streamAllVehicles()) {
+            return exportVehicles(vehicles, file);
+        }
+    }
+
+    // Records that aren't calculated are skipped
+    Result exportProperties(Stream<PropertyTax> properties, Path file) throws IOException {
+        return export(properties, PROPERTY_HEADER, TaxExporter::appendProperty, file);
+    }
+
+    Result exportVehicles(Stream<VehicleTax> vehicles, Path file) throws IOException {
+        return export(vehicles, VEHICLE_HEADER, TaxExporter::appendVehicle, file);
+    }
+
+    private <T extends Tax> Result export(Stream<T> records, String header, RowFormat<T> format, Path file)
+            throws IOException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        BlockingQueue<List<Tax>> batches = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+        // In file order; bounds the chunks being compressed or waiting to be written
+        BlockingQueue<Future<byte[]>> chunks = new ArrayBlockingQueue<>(2 * compressors);
+        Future<byte[]> last = CompletableFuture.completedFuture(null);
+        ExecutorService compressorPool = Executors.newFixedThreadPool(compressors, r -> {
+            Thread t = new Thread(r, "export-compressor");
+            t.setDaemon(true);
+            return t;
+        });
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        Thread serializer = null;
+        Thread writer = null;
+        try {
+            serializer = stage("export-serializer", failure, () -> {
+                Chunk chunk = new Chunk();
+                chunk.ascii(header).newLine();
+                while (true) {
+                    List<Tax> batch = take(batches, failure);
+                    if (batch == END) {
+                        break;
+                    }
+                    for (Tax record : batch) {
+                        @SuppressWarnings("unchecked")
+                        T row = (T) record;
+                        format.append(chunk, row);
+                        result.rows++;
+                        if (chunk.length >= CHUNK_SIZE) {
+                            result.bytes += chunk.length;
+                            put(chunks, compressorPool.submit(chunk::gzip), failure);
+                            chunk = new Chunk();
+                        }
+                    }
+                }
+                result.bytes += chunk.length;
+                put(chunks, compressorPool.submit(chunk::gzip), failure);
+                put(chunks, last, failure);
+            });
+            writer = stage("export-writer", failure, () -> {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    Future<byte[]> next;
+                    while ((next = take(chunks, failure)) != last) {
+                        byte[] compressed = next.get();
+                        out.write(compressed);
+                        result.compressedBytes += compressed.length;
+                    }
+                }
+            });
+
+            List<Tax> batch = new ArrayList<>(BATCH_SIZE);
+            Iterator<T> it = records.iterator();
+            while (it.hasNext() && failure.get() == null) {
+                T record = it.next();
+                if (record.isCalculated()) {
+                    batch.add(record);
+                    if (batch.size() == BATCH_SIZE) {
+                        put(batches, batch, failure);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+            }
+            if (failure.get() == null) {
+                if (!batch.isEmpty()) {
+                    put(batches, batch, failure);
+                }
+                put(batches, END, failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            // On a failure the stages give up within one poll of their queue
+            join(serializer, failure);
+            join(writer, failure);
+            compressorPool.shutdownNow();
+            if (failure.get() != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        Throwable error = failure.get();
+        if (error != null) {
+            EXPORT_OP.recordError(start);
+            if (error instanceof ExecutionException) {
+                error = error.getCause();
+            }
+            if (error instanceof IOException e) {
+                throw e;
+            }
+            if (error instanceof RuntimeException e) {
+                throw e;
+            }
+            throw new IOException("Export to " + file + " failed: " + error, error);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        EXPORT_OP.record(start, result.rows);
+        result.seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return result;
+    }
+
+    private interface StageBody {
+        void run() throws Exception;
+    }
+
+    // A stage's first error stops the others, which check for it while they wait
+    private static Thread stage(String name, AtomicReference<Throwable> failure, StageBody body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void join(Thread stage, AtomicReference<Throwable> failure) {
+        if (stage == null) {
+            return;
+        }
+        try {
+            stage.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private static <E> void put(BlockingQueue<E> queue, E item, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null) {
+                throw new CancellationException("Export stopped by an earlier error.");
+            }
+        }
+    }
+
+    private static <E> E take(BlockingQueue<E> queue, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        E item;
+        while ((item = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+            if (failure.get() != null) {
+                throw new CancellationException("Export stopped by an earlier error.");
+            }
+        }
+        return item;
+    }
+
+    private static void appendProperty(Chunk chunk, PropertyTax property) {
+        chunk.number(property.getId()).comma()
+             .number(property.getBaseValue()).comma()
+             .number(property.getBuiltUpArea()).comma()
+             .number(property.getAge()).comma()
+             .text(property.getLocation()).comma()
+             .tax(property).newLine();
+    }
+
+    private static void appendVehicle(Chunk chunk, VehicleTax vehicle) {
+        chunk.number(vehicle.getRegistrationNumber()).comma()
+             .text(vehicle.getBrand()).comma()
+             .number(vehicle.getVelocity()).comma()
+             .number(vehicle.getSeatCapacity()).comma()
+             .number(vehicle.getType()).comma()
+             .number(vehicle.getPrice()).comma()
+             .tax(vehicle).newLine();
+    }
+
+    // CSV bytes formatted in place, without a String per field
+    private static final class Chunk {
+        byte[] bytes = new byte[CHUNK_SIZE + 1024];
+        int length;
+
+        byte[] gzip() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024)) {
+                gzip.write(bytes, 0, length);
+            }
+            return out.toByteArray();
+        }
+
+        Chunk comma() {
+            return character(',');
+        }
+
+        Chunk newLine() {
+            return character('\n');
+        }
+
+        // Encoded as UTF-8; a lone surrogate, which has no encoding, as '?'
+        Chunk character(char c) {
+            ensure(3);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xC0 | c >> 6);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                bytes[length++] = '?';
+            } else {
+                bytes[length++] = (byte) (0xE0 | c >> 12);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            }
+            return this;
+        }
+
+        Chunk number(long value) {
+            ensure(20);
+            if (value < 0) {
+                if (value == Long.MIN_VALUE) {
+                    return ascii(Long.toString(value));
+                }
+                bytes[length++] = '-';
+                value = -value;
+            }
+            int end = length + digits(value);
+            for (int i = end - 1; i >= length; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length = end;
+            return this;
+        }
+
+        // Rupees with two decimals, e.g. 1234.50
+        Chunk tax(Tax record) {
+            if (record.largeTax != null) {
+                return ascii(record.largeTax.toPlainString());
+            }
+            long paise = record.taxPaise;
+            if (paise < 0) {
+                character('-');
+                paise = -paise;
+            }
+            number(paise / 100).character('.');
+            long fraction = paise % 100;
+            return character((char) ('0' + fraction / 10)).character((char) ('0' + fraction % 10));
+        }
+
+        // A one-character field, quoted like text(String)
+        Chunk text(char value) {
+            if (value == ',' || value == '"' || value == '\n' || value == '\r') {
+                return text(String.valueOf(value));
+            }
+            return character(value);
+        }
+
+        // Quoted if it holds a comma, quote or line break
+        Chunk text(String value) {
+            if (value == null) {
+                return this;
+            }
+            boolean quote = false;
+            boolean ascii = true;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                quote |= c == ',' || c == '"' || c == '\n' || c == '\r';
+                ascii &= c < 0x80;
+            }
+            if (!quote && ascii) {
+                return ascii(value);
+            }
+            String field = quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+            byte[] utf8 = field.getBytes(StandardCharsets.UTF_8);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+            return this;
+        }
+
+        Chunk ascii(String value) {
+            ensure(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                bytes[length++] = (byte) value.charAt(i);
+            }
+            return this;
+        }
+
+        private void ensure(int room) {
+            if (length + room > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + room));
+            }
+        }
+
+        private static int digits(long value) {
+            int digits = 1;
+            while (value >= 10) {
+                value /= 10;
+                digits++;
+            }
+            return digits;
+        }
+    }
+}
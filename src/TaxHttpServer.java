@@ -0,0 +1,396 @@
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// HTTP front end for a TaxRepository, for callers that can't drive the menu.
+// Requests use HTTP Basic auth with the same credentials as the console.
+// Request parameters come from the query string or a form-encoded body;
+// responses are JSON.
+//
+//   GET  /properties?after=&limit=            page of properties, see TaxRepository.propertyPage()
+//   POST /properties                          baseValue, builtUpArea, age, location
+//   GET  /properties/{id}
+//   POST /properties/{id}/calculate
+//   GET  /vehicles?after=&limit=
+//   POST /vehicles                            registrationNumber, brand, velocity, seatCapacity
+//   GET  /vehicles/{registrationNumber}
+//   POST /vehicles/{registrationNumber}/calculate   type, price
+//   GET  /total
+//   GET  /metrics                             Prometheus text, see Metrics.writePrometheus()
+class TaxHttpServer {
+    static final int DEFAULT_PORT = 8080;
+    static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final int FALLBACK_THREADS = 64;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    // Server errors count as failed; client errors are the caller's
+    private static final Metrics.Operation PROPERTIES_OP = Metrics.operation("http.properties");
+    private static final Metrics.Operation VEHICLES_OP = Metrics.operation("http.vehicles");
+    private static final Metrics.Operation TOTAL_OP = Metrics.operation("http.total");
+
+    static {
+        // Responses are small, so Nagle's algorithm would hold each one back
+        // until the client's delayed ACK (about 40 ms per request)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final TaxRepository repository;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Thrown by handlers to end a request with the given status
+    private static class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    TaxHttpServer(TaxRepository repository, int port) throws IOException {
+        this.repository = repository;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/properties", exchange -> handle(exchange, PROPERTIES_OP, this::properties));
+        server.createContext("/vehicles", exchange -> handle(exchange, VEHICLES_OP, this::vehicles));
+        server.createContext("/total", exchange -> handle(exchange, TOTAL_OP, this::total));
+        server.createContext("/metrics", TaxHttpServer::metrics);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // With a database behind it most of a request's time is spent waiting, so one thread per
+    // request is the simplest model. Virtual threads make that cheap on JDK 21+;
+    // on older JDKs a fixed pool caps the thread count instead.
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(FALLBACK_THREADS);
+        }
+    }
+
+    // The id of a record a request creates. Each request runs on its own
+    // thread, so a per-thread block of ids would be mostly wasted.
+    private static long nextId() {
+        IdAllocator ids = Tax.getIdAllocator();
+        return (ids instanceof BlockIdAllocator blocks ? blocks.shared() : ids).nextId();
+    }
+
+    private interface Handler {
+        String handle(String method, String[] path, Map<String, String> params) throws HttpError;
+    }
+
+    private void handle(HttpExchange exchange, Metrics.Operation op, Handler handler) throws IOException {
+        long start = System.nanoTime();
+        int status = 200;
+        String body;
+        try {
+            if (!authorized(exchange)) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"tax\"");
+                throw new HttpError(401, "Authentication required.");
+            }
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+            body = handler.handle(method, path, params(exchange));
+        } catch (HttpError e) {
+            status = e.status;
+            body = error(e.getMessage());
+        } catch (NumberFormatException e) {
+            status = 400;
+            body = error("Invalid number: " + e.getMessage());
+        } catch (StorageException e) {
+            e.printStackTrace();
+            status = 500;
+            body = error("Storage error.");
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            status = 500;
+            body = error("Internal error.");
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        if (status >= 500) {
+            op.recordError(start);
+        } else {
+            op.record(start, 0);
+        }
+    }
+
+    private static void metrics(HttpExchange exchange) throws IOException {
+        if (!authorized(exchange)) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"tax\"");
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+            return;
+        }
+        StringWriter text = new StringWriter();
+        Metrics.writePrometheus(text);
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static boolean authorized(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) {
+            return false;
+        }
+        String credentials;
+        try {
+            credentials = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        int colon = credentials.indexOf(':');
+        return colon >= 0 && Welcome.authenticate(credentials.substring(0, colon), credentials.substring(colon + 1));
+    }
+
+    private String properties(String method, String[] path, Map<String, String> params) throws HttpError {
+        if (path.length == 1) {
+            switch (method) {
+                case "GET" -> {
+                    List<PropertyTax> page = repository.propertyPage(longParam(params, "after", 0), limit(params));
+                    StringBuilder json = new StringBuilder("[");
+                    for (PropertyTax property : page) {
+                        json.append(json.length() > 1 ? "," : "").append(json(property));
+                    }
+                    return json.append(']').toString();
+                }
+                case "POST" -> {
+                    String location = required(params, "location");
+                    PropertyTax property = new PropertyTax(nextId(), intParam(params, "baseValue"),
+                                                           intParam(params, "builtUpArea"), intParam(params, "age"),
+                                                           location.isEmpty() ? ' ' : location.charAt(0));
+                    repository.addProperty(property);
+                    return "{\"id\":" + property.getId() + "}";
+                }
+                default -> throw new HttpError(405, "Method not allowed.");
+            }
+        }
+        long id = Long.parseLong(path[1]);
+        if (path.length == 2 && method.equals("GET")) {
+            return json(existingProperty(id));
+        }
+        if (path.length == 3 && path[2].equals("calculate")) {
+            if (!method.equals("POST")) {
+                throw new HttpError(405, "Method not allowed.");
+            }
+            PropertyTax property = repository.calculateProperty(id);
+            if (property == null) {
+                throw new HttpError(404, "Property ID not found.");
+            }
+            return json(property);
+        }
+        throw path.length == 2 ? new HttpError(405, "Method not allowed.") : new HttpError(404, "Not found.");
+    }
+
+    private String vehicles(String method, String[] path, Map<String, String> params) throws HttpError {
+        if (path.length == 1) {
+            switch (method) {
+                case "GET" -> {
+                    // Registration numbers are ints; a larger cursor would wrap to another page
+                    long after = longParam(params, "after", Integer.MIN_VALUE);
+                    if (after < Integer.MIN_VALUE || after > Integer.MAX_VALUE) {
+                        throw new HttpError(400, "After must be a registration number.");
+                    }
+                    List<VehicleTax> page = repository.vehiclePage((int) after, limit(params));
+                    StringBuilder json = new StringBuilder("[");
+                    for (VehicleTax vehicle : page) {
+                        json.append(json.length() > 1 ? "," : "").append(json(vehicle));
+                    }
+                    return json.append(']').toString();
+                }
+                case "POST" -> {
+                    int registrNo = intParam(params, "registrationNumber");
+                    String brand = required(params, "brand");
+                    VehicleTax vehicle = new VehicleTax(nextId(), registrNo, brand, intParam(params, "velocity"),
+                                                        intParam(params, "seatCapacity"));
+                    boolean added;
+                    try {
+                        added = repository.addVehicle(vehicle);
+                    } catch (IllegalArgumentException e) { // doesn't fit the repository's storage
+                        throw new HttpError(400, e.getMessage());
+                    }
+                    if (!added) {
+                        throw new HttpError(409, "Registration Number already exists.");
+                    }
+                    return "{\"registrationNumber\":" + registrNo + "}";
+                }
+                default -> throw new HttpError(405, "Method not allowed.");
+            }
+        }
+        int registrNo = Integer.parseInt(path[1]);
+        if (path.length == 2 && method.equals("GET")) {
+            return json(existingVehicle(registrNo));
+        }
+        if (path.length == 3 && path[2].equals("calculate")) {
+            if (!method.equals("POST")) {
+                throw new HttpError(405, "Method not allowed.");
+            }
+            int type = intParam(params, "type");
+            if (!Tax.getRates().isFuelType(type)) {
+                throw new HttpError(400, "Invalid Vehicle Type.");
+            }
+            VehicleTax vehicle = repository.calculateVehicle(registrNo, type, intParam(params, "price"));
+            if (vehicle == null) {
+                throw new HttpError(404, "Registration Number not found.");
+            }
+            return json(vehicle);
+        }
+        throw path.length == 2 ? new HttpError(405, "Method not allowed.") : new HttpError(404, "Not found.");
+    }
+
+    private String total(String method, String[] path, Map<String, String> params) throws HttpError {
+        if (path.length != 1) {
+            throw new HttpError(404, "Not found.");
+        }
+        if (!method.equals("GET")) {
+            throw new HttpError(405, "Method not allowed.");
+        }
+        RunningTotals totals = repository.totals();
+        BigDecimal propertyTax = totals.tax(RunningTotals.Category.PROPERTY);
+        BigDecimal vehicleTax = totals.tax(RunningTotals.Category.VEHICLE);
+        return "{\"propertyTax\":" + propertyTax.toPlainString() + ",\"vehicleTax\":" + vehicleTax.toPlainString()
+            + ",\"totalTax\":" + propertyTax.add(vehicleTax).toPlainString() + "}";
+    }
+
+    private PropertyTax existingProperty(long id) throws HttpError {
+        PropertyTax property = repository.findProperty(id);
+        if (property == null) {
+            throw new HttpError(404, "Property ID not found.");
+        }
+        return property;
+    }
+
+    private VehicleTax existingVehicle(int registrNo) throws HttpError {
+        VehicleTax vehicle = repository.findVehicle(registrNo);
+        if (vehicle == null) {
+            throw new HttpError(404, "Registration Number not found.");
+        }
+        return vehicle;
+    }
+
+    private static String json(PropertyTax property) {
+        return "{\"id\":" + property.getId() + ",\"baseValue\":" + property.getBaseValue()
+            + ",\"builtUpArea\":" + property.getBuiltUpArea() + ",\"age\":" + property.getAge()
+            + ",\"location\":" + quote(String.valueOf(property.getLocation())) + ",\"tax\":" + property.getTaxAmount().toPlainString() + "}";
+    }
+
+    private static String json(VehicleTax vehicle) {
+        return "{\"registrationNumber\":" + vehicle.getRegistrationNumber() + ",\"brand\":" + quote(vehicle.getBrand())
+            + ",\"velocity\":" + vehicle.getVelocity() + ",\"seatCapacity\":" + vehicle.getSeatCapacity()
+            + ",\"type\":" + vehicle.getType() + ",\"price\":" + vehicle.getPrice() + ",\"tax\":" + vehicle.getTaxAmount().toPlainString() + "}";
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    // Query string parameters, overridden by any form-encoded body
+    private static Map<String, String> params(HttpExchange exchange) throws IOException, HttpError {
+        Map<String, String> params = new HashMap<>();
+        parse(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new HttpError(413, "Request body too large.");
+            }
+            parse(new String(body, StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+
+    private static void parse(String encoded, Map<String, String> params) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8).trim(),
+                       URLDecoder.decode(value, StandardCharsets.UTF_8).trim());
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) throws HttpError {
+        String value = params.get(name);
+        if (value == null) {
+            throw new HttpError(400, "Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name) throws HttpError {
+        return Integer.parseInt(required(params, name));
+    }
+
+    private static long longParam(Map<String, String> params, String name, long defaultValue) {
+        String value = params.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    private static int limit(Map<String, String> params) throws HttpError {
+        long limit = longParam(params, "limit", DEFAULT_PAGE_SIZE);
+        if (limit <= 0 || limit > TaxRepository.MAX_PAGE_SIZE) {
+            throw new HttpError(400, "Limit must be between 1 and " + TaxRepository.MAX_PAGE_SIZE + ".");
+        }
+        return (int) limit;
+    }
+}
@@ -0,0 +1,24 @@
+import jdk.jfr.*;
+
+// One timed operation, recorded by Metrics when a JFR recording enables it:
+//   java -XX:StartFlightRecording:filename=tax.jfr ... then jfr print --events tax.Operation tax.jfr
+@Name("tax.Operation")
+@Label("Tax Operation")
+@Category("Tax")
+@Description("An add, calculation, listing, total, HTTP request or SQL statement")
+@StackTrace(false)
+class TaxOperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    // The event's own duration would only cover commit(); this is the operation's
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,289 @@
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Tax rates compiled from rule rows into dense arrays of fixed-point rates
+// (see Money), so evaluating a record is a few array loads and exact long
+// arithmetic with no map lookups or allocation. Instances are immutable;
+// RateEngine swaps in a new one when the rules change.
+//
+//   fuel      rate per unit of purchase price, by fuel type, and optionally
+//             the type's name for menus and reports
+//   location  surcharge per unit of built-up area, by location code: Y in the
+//             city or N outside it, in any case
+//   age       multiplier of the property tax for ages from the key upwards
+//
+// Each rule has an effective date; for every kind and key the latest rule in
+// effect on the compile date wins; a fuel type's name comes from the latest
+// rule in effect that gives one. Kinds and keys without a rule keep the
+// built-in defaults, which are the rates the app has always used.
+final class TaxRates {
+    enum Kind { FUEL, LOCATION, AGE }
+
+    static final class Rule {
+        final Kind kind;
+        final int key; // fuel type, location character or first age of the band
+        final double rate;
+        final LocalDate effectiveFrom;
+        final String name; // of the fuel type, or null
+
+        Rule(Kind kind, int key, double rate, LocalDate effectiveFrom, String name) {
+            this.kind = kind;
+            this.key = key;
+            this.rate = rate;
+            this.effectiveFrom = effectiveFrom;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Rule other && kind == other.kind && key == other.key
+                && Double.compare(rate, other.rate) == 0 && effectiveFrom.equals(other.effectiveFrom)
+                && Objects.equals(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, key, rate, effectiveFrom, name);
+        }
+    }
+
+    // Returned instead of a tax when there is no rate for the record
+    static final long NO_RATE = Long.MIN_VALUE;
+
+    static final int MAX_FUEL_TYPE = 255;
+    static final int MAX_AGE_BAND = 1000;
+    static final int MAX_NAME_LENGTH = 32;
+
+    // Plain enough to go into SQL as a literal and into the rates file as the
+    // rest of a line; starts with a letter, so it can't be taken for a date
+    private static final Pattern NAME =
+        Pattern.compile("\\p{L}[\\p{L}\\p{N} ._()/+-]{0," + (MAX_NAME_LENGTH - 1) + "}");
+
+    static final List<Rule> DEFAULT_RULES = List.of(
+        new Rule(Kind.FUEL, 1, 0.01, LocalDate.MIN, "Petrol"),
+        new Rule(Kind.FUEL, 2, 0.11, LocalDate.MIN, "Diesel"),
+        new Rule(Kind.FUEL, 3, 0.12, LocalDate.MIN, "CNG"),
+        new Rule(Kind.LOCATION, 'Y', 0.5, LocalDate.MIN, null), // in city
+        new Rule(Kind.LOCATION, 'N', 0.0, LocalDate.MIN, null),
+        new Rule(Kind.AGE, 0, 1.0, LocalDate.MIN, null));
+
+    static final TaxRates DEFAULT = compile(List.of(), LocalDate.now());
+
+    // All in millionths
+    private final long[] fuelRate;          // NO_RATE for types without a rate
+    private final String[] fuelName;        // null for types without a rate
+    private final long[] locationSurcharge; // indexed by char; NO_RATE for unknown locations
+    private final long[] ageFactor;         // the last entry covers every older age
+    private final List<Rule> rules;
+    private final LocalDate date;
+
+    private TaxRates(long[] fuelRate, String[] fuelName, long[] locationSurcharge, long[] ageFactor,
+                     List<Rule> rules, LocalDate date) {
+        this.fuelRate = fuelRate;
+        this.fuelName = fuelName;
+        this.locationSurcharge = locationSurcharge;
+        this.ageFactor = ageFactor;
+        this.rules = rules;
+        this.date = date;
+    }
+
+    // The rates in effect on the given date
+    static TaxRates compile(List<Rule> rules, LocalDate date) {
+        Map<Kind, TreeMap<Integer, Rule>> chosen = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            chosen.put(kind, new TreeMap<>());
+        }
+        TreeMap<Integer, Rule> named = new TreeMap<>(); // the fuel rules that name their type
+        for (List<Rule> list : List.of(DEFAULT_RULES, rules)) {
+            for (Rule rule : list) {
+                if (rule.effectiveFrom.isAfter(date)) {
+                    continue;
+                }
+                choose(chosen.get(rule.kind), rule);
+                if (rule.name != null) {
+                    choose(named, rule);
+                }
+            }
+        }
+
+        TreeMap<Integer, Rule> fuels = chosen.get(Kind.FUEL);
+        long[] fuelRate = new long[fuels.lastKey() + 1];
+        String[] fuelName = new String[fuelRate.length];
+        Arrays.fill(fuelRate, NO_RATE);
+        fuels.forEach((type, rule) -> {
+            fuelRate[type] = Money.micros(rule.rate);
+            fuelName[type] = named.containsKey(type) ? named.get(type).name : "Type " + type;
+        });
+
+        long[] locationSurcharge = new long[128];
+        Arrays.fill(locationSurcharge, NO_RATE);
+        chosen.get(Kind.LOCATION).forEach((location, rule) -> {
+            locationSurcharge[Character.toUpperCase(location)] = Money.micros(rule.rate);
+            locationSurcharge[Character.toLowerCase(location)] = Money.micros(rule.rate);
+        });
+
+        TreeMap<Integer, Rule> bands = chosen.get(Kind.AGE);
+        long[] ageFactor = new long[bands.lastKey() + 1];
+        for (int age = 0; age < ageFactor.length; age++) {
+            Map.Entry<Integer, Rule> band = bands.floorEntry(age);
+            ageFactor[age] = band == null ? Money.MICROS_PER_RUPEE : Money.micros(band.getValue().rate);
+        }
+        return new TaxRates(fuelRate, fuelName, locationSurcharge, ageFactor, List.copyOf(rules), date);
+    }
+
+    // The later of the rule and the one chosen so far for its key
+    private static void choose(Map<Integer, Rule> chosen, Rule rule) {
+        Rule current = chosen.get(rule.key);
+        if (current == null || !rule.effectiveFrom.isBefore(current.effectiveFrom)) {
+            chosen.put(rule.key, rule);
+        }
+    }
+
+    // Checks a rule before it is accepted from a file or table; name is null
+    // or, for fuel rules only, the name of the fuel type
+    static Rule rule(String kind, String key, double rate, LocalDate effectiveFrom, String name) {
+        Kind k = switch (kind.toLowerCase(Locale.ROOT)) {
+            case "fuel" -> Kind.FUEL;
+            case "location" -> Kind.LOCATION;
+            case "age" -> Kind.AGE;
+            default -> throw new IllegalArgumentException("unknown rate kind " + kind);
+        };
+        if (!Double.isFinite(rate)) {
+            throw new IllegalArgumentException("rate must be a number");
+        }
+        try {
+            Money.micros(rate);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("rate can have at most " + Money.RATE_SCALE + " decimal places");
+        }
+        int value;
+        if (k == Kind.LOCATION) {
+            // The store, importer and reports only know these two codes
+            if (!key.equalsIgnoreCase("Y") && !key.equalsIgnoreCase("N")) {
+                throw new IllegalArgumentException("location must be Y or N");
+            }
+            value = Character.toUpperCase(key.charAt(0));
+        } else {
+            value = Integer.parseInt(key);
+            int min = k == Kind.FUEL ? 1 : 0; // fuel type 0 means not chosen yet
+            int max = k == Kind.FUEL ? MAX_FUEL_TYPE : MAX_AGE_BAND;
+            if (value < min || value > max) {
+                throw new IllegalArgumentException(kind + " key must be between " + min + " and " + max);
+            }
+        }
+        name = name == null || name.isBlank() ? null : name.strip();
+        if (name != null && k != Kind.FUEL) {
+            throw new IllegalArgumentException("only fuel rules have a name");
+        }
+        if (name != null && !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("fuel type name must start with a letter and have at most "
+                                               + MAX_NAME_LENGTH + " letters, digits, spaces or ._()/+-");
+        }
+        return new Rule(k, value, rate, effectiveFrom == null ? LocalDate.MIN : effectiveFrom, name);
+    }
+
+    // The tax in paise, or NO_RATE if the location has no rate, in which case
+    // the tax is left as it was. Throws ArithmeticException if it would
+    // overflow a long; propertyTaxExact() then gives the tax.
+    long propertyTax(int baseValue, int builtUpArea, int age, char location) {
+        long surcharge = location < 128 ? locationSurcharge[location] : NO_RATE;
+        if (surcharge == NO_RATE) {
+            return NO_RATE;
+        }
+        long value = Math.multiplyExact((long) baseValue * builtUpArea, age);
+        long micros = Math.addExact(Math.multiplyExact(value, ageFactor(age)),
+                                    Math.multiplyExact((long) builtUpArea, surcharge));
+        return Money.microsToPaise(micros);
+    }
+
+    // Same as propertyTax() in BigDecimal, for taxes too large for a long; null for NO_RATE
+    BigDecimal propertyTaxExact(int baseValue, int builtUpArea, int age, char location) {
+        long surcharge = location < 128 ? locationSurcharge[location] : NO_RATE;
+        if (surcharge == NO_RATE) {
+            return null;
+        }
+        BigDecimal value = BigDecimal.valueOf((long) baseValue * builtUpArea).multiply(BigDecimal.valueOf(age));
+        return Money.round(value.multiply(Money.rate(ageFactor(age)))
+                               .add(BigDecimal.valueOf(builtUpArea).multiply(Money.rate(surcharge))));
+    }
+
+    // The tax in paise, or NO_RATE if the fuel type has no rate. Throws
+    // ArithmeticException if it would overflow a long; see vehicleTaxExact().
+    long vehicleTax(int velocity, int seatCapacity, int type, int price) {
+        long rate = fuelRate(type);
+        if (rate == NO_RATE) {
+            return NO_RATE;
+        }
+        long fixed = ((long) velocity + seatCapacity) * Money.MICROS_PER_RUPEE; // at most 2^33 * 2^20
+        return Money.microsToPaise(Math.addExact(fixed, Math.multiplyExact((long) price, rate)));
+    }
+
+    // Same as vehicleTax() in BigDecimal, for taxes too large for a long; null for NO_RATE
+    BigDecimal vehicleTaxExact(int velocity, int seatCapacity, int type, int price) {
+        long rate = fuelRate(type);
+        if (rate == NO_RATE) {
+            return null;
+        }
+        return Money.round(BigDecimal.valueOf((long) velocity + seatCapacity)
+                               .add(BigDecimal.valueOf(price).multiply(Money.rate(rate))));
+    }
+
+    boolean isFuelType(int type) {
+        return fuelRate(type) != NO_RATE;
+    }
+
+    // The fuel types that have a rate, in order
+    int[] fuelTypes() {
+        int[] types = new int[fuelRate.length];
+        int count = 0;
+        for (int type = 0; type < fuelRate.length; type++) {
+            if (fuelRate[type] != NO_RATE) {
+                types[count++] = type;
+            }
+        }
+        return Arrays.copyOf(types, count);
+    }
+
+    // Null if the fuel type has no rate
+    String fuelTypeName(int type) {
+        return type >= 0 && type < fuelName.length ? fuelName[type] : null;
+    }
+
+    private long fuelRate(int type) {
+        long[] rates = fuelRate;
+        return type >= 0 && type < rates.length ? rates[type] : NO_RATE;
+    }
+
+    private long ageFactor(int age) {
+        long[] factors = ageFactor;
+        return factors[age < 0 ? 0 : Math.min(age, factors.length - 1)];
+    }
+
+    // The rules this was compiled from, without the defaults
+    List<Rule> rules() {
+        return rules;
+    }
+
+    LocalDate date() {
+        return date;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("rates effective " + date + ": fuel");
+        for (int type = 0; type < fuelRate.length; type++) {
+            if (fuelRate[type] != NO_RATE) {
+                text.append(' ').append(type).append('=').append(format(fuelRate[type]));
+            }
+        }
+        long surcharge = locationSurcharge['Y'];
+        text.append(", city surcharge ").append(surcharge == NO_RATE ? "none" : format(surcharge));
+        return text.toString();
+    }
+
+    private static String format(long micros) {
+        return Money.rate(micros).stripTrailingZeros().toPlainString();
+    }
+}
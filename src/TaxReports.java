@@ -0,0 +1,283 @@
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tax reports grouped in SQL, so only one row per group crosses the wire.
+// Results are cached until the tables change; JdbcTaxRepository reports every
+// write it makes through recordChange() or invalidate().
+// Writes made by other processes are not seen until the next invalidation
+// or reconcile().
+class TaxReports {
+    static class Row {
+        final String report;
+        final String group;
+        final long count;
+        final double total;
+        final double average;
+
+        Row(String report, String group, long count, double total, double average) {
+            this.report = report;
+            this.group = group;
+            this.count = count;
+            this.total = total;
+            this.average = average;
+        }
+    }
+
+    // Row counts, and the number and tax of the rows with a calculated tax
+    static class Totals {
+        final long propertyCount;
+        final long propertyCalculated;
+        final BigDecimal propertyTax;
+        final long vehicleCount;
+        final long vehicleCalculated;
+        final BigDecimal vehicleTax;
+
+        Totals(long propertyCount, long propertyCalculated, BigDecimal propertyTax,
+               long vehicleCount, long vehicleCalculated, BigDecimal vehicleTax) {
+            this.propertyCount = propertyCount;
+            this.propertyCalculated = propertyCalculated;
+            this.propertyTax = propertyTax;
+            this.vehicleCount = vehicleCount;
+            this.vehicleCalculated = vehicleCalculated;
+            this.vehicleTax = vehicleTax;
+        }
+    }
+
+    private static final String LOCATION_GROUP =
+        "CASE WHEN location IN ('Y', 'y') THEN 'In City' ELSE 'Outside City' END";
+    private static final String AGE_BAND_GROUP =
+        "CASE WHEN age < 5 THEN '0-4 years' WHEN age < 10 THEN '5-9 years' WHEN age < 20 THEN '10-19 years'"
+        + " WHEN age < 50 THEN '20-49 years' ELSE '50+ years' END";
+    private static final String NOT_SET = "Not Set";
+
+    private static final Metrics.Operation SUMMARY_REPORT_OP = Metrics.operation("sql.summary_report");
+    private static final Metrics.Operation TOTALS_OP = Metrics.operation("sql.totals");
+
+    // All four groupings in one round trip; sort_key keeps bands and fuel types in natural order.
+    // The fuel types and their names come from the rates, so the query is built per TaxRates.
+    private static String summaryReport(TaxRates rates) {
+        String fuelTypeGroup = fuelTypeGroup(rates);
+        return "SELECT 1 AS report_order, 'Property by Location' AS report, " + LOCATION_GROUP + " AS grp, 0 AS sort_key,"
+        + " COUNT(*) AS cnt, COALESCE(SUM(tax), 0) AS total, COALESCE(AVG(tax), 0) AS average"
+        + " FROM property_tax GROUP BY " + LOCATION_GROUP
+        + " UNION ALL"
+        + " SELECT 2, 'Property by Age Band', " + AGE_BAND_GROUP + ", MIN(age),"
+        + " COUNT(*), COALESCE(SUM(tax), 0), COALESCE(AVG(tax), 0)"
+        + " FROM property_tax GROUP BY " + AGE_BAND_GROUP
+        + " UNION ALL"
+        + " SELECT 3, 'Vehicle by Fuel Type', " + fuelTypeGroup + ", MIN(COALESCE(type, 0)),"
+        + " COUNT(*), COALESCE(SUM(tax), 0), COALESCE(AVG(tax), 0)"
+        + " FROM vehicle_tax GROUP BY " + fuelTypeGroup
+        + " UNION ALL"
+        + " SELECT 4, 'Vehicle by Brand', brand, 0,"
+        + " COUNT(*), COALESCE(SUM(tax), 0), COALESCE(AVG(tax), 0)"
+        + " FROM vehicle_tax GROUP BY brand"
+        + " ORDER BY report_order, sort_key, grp";
+    }
+
+    private static String fuelTypeGroup(TaxRates rates) {
+        StringBuilder sql = new StringBuilder("CASE type");
+        for (int type : rates.fuelTypes()) {
+            sql.append(" WHEN ").append(type)
+               .append(" THEN '").append(rates.fuelTypeName(type).replace("'", "''")).append('\'');
+        }
+        return sql.append(" ELSE '").append(NOT_SET).append("' END").toString();
+    }
+    // Sums whole paise, which a DOUBLE column holds exactly, so the totals
+    // are exact for either a DECIMAL or a DOUBLE tax column
+    private static final String TOTALS =
+        "SELECT 1 AS kind, COUNT(*) AS cnt, COUNT(tax) AS calculated, COALESCE(SUM(ROUND(tax * 100)), 0) AS paise"
+        + " FROM property_tax"
+        + " UNION ALL"
+        + " SELECT 2, COUNT(*), COUNT(tax), COALESCE(SUM(ROUND(tax * 100)), 0) FROM vehicle_tax";
+
+    private final ConnectionPool pool;
+    private final RunningTotals running = new RunningTotals();
+    private final AtomicLong version = new AtomicLong();
+    private volatile Cached<List<Row>> summary;
+    private volatile Cached<Totals> totals;
+
+    private static class Cached<T> {
+        final long version;
+        final TaxRates rates; // the rates the value was grouped by, null if it doesn't depend on them
+        final T value;
+
+        Cached(long version, TaxRates rates, T value) {
+            this.version = version;
+            this.rates = rates;
+            this.value = value;
+        }
+    }
+
+    TaxReports(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    // The totals and summary report queries, by description
+    Map<String, String> queries() {
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("The totals", TOTALS);
+        queries.put("The summary report", summaryReport(Tax.getRates()));
+        return queries;
+    }
+
+    void invalidate() {
+        version.incrementAndGet();
+    }
+
+    // Loads the running totals with one full recompute
+    void seedRunningTotals() throws SQLException {
+        reconcile();
+    }
+
+    // Counts a newly stored record
+    void recordChange(Tax record) {
+        running.add(record);
+        invalidate();
+    }
+
+    RunningTotals runningTotals() {
+        return running;
+    }
+
+    // Checks the running totals against a fresh recompute and resets them to it
+    List<RunningTotals.Reconciliation> reconcile() throws SQLException {
+        invalidate();
+        Totals actual = totals();
+        return List.of(running.reconcile(RunningTotals.Category.PROPERTY, actual.propertyCalculated, actual.propertyTax),
+                       running.reconcile(RunningTotals.Category.VEHICLE, actual.vehicleCalculated, actual.vehicleTax));
+    }
+
+    List<Row> summary() throws SQLException {
+        Cached<List<Row>> cached = summary;
+        long current = version.get();
+        TaxRates rates = Tax.getRates();
+        if (cached != null && cached.version == current && cached.rates == rates) {
+            return cached.value;
+        }
+        List<Row> rows = new ArrayList<>();
+        long start = System.nanoTime();
+        try (PooledConnection conn = pool.borrow();
+             ResultSet rs = conn.prepare(summaryReport(rates)).executeQuery()) {
+            while (rs.next()) {
+                rows.add(new Row(rs.getString("report"), rs.getString("grp"), rs.getLong("cnt"),
+                                 rs.getDouble("total"), rs.getDouble("average")));
+            }
+        } catch (SQLException e) {
+            SUMMARY_REPORT_OP.recordError(start);
+            throw e;
+        }
+        SUMMARY_REPORT_OP.record(start, rows.size());
+        rows = Collections.unmodifiableList(rows);
+        summary = new Cached<>(current, rates, rows);
+        return rows;
+    }
+
+    Totals totals() throws SQLException {
+        Cached<Totals> cached = totals;
+        long current = version.get();
+        if (cached != null && cached.version == current) {
+            return cached.value;
+        }
+        long propertyCount = 0, propertyCalculated = 0, vehicleCount = 0, vehicleCalculated = 0;
+        BigDecimal propertyTax = BigDecimal.ZERO, vehicleTax = BigDecimal.ZERO;
+        long start = System.nanoTime();
+        try (PooledConnection conn = pool.borrow();
+             ResultSet rs = conn.prepare(TOTALS).executeQuery()) {
+            while (rs.next()) {
+                if (rs.getInt("kind") == 1) {
+                    propertyCount = rs.getLong("cnt");
+                    propertyCalculated = rs.getLong("calculated");
+                    propertyTax = total(rs);
+                } else {
+                    vehicleCount = rs.getLong("cnt");
+                    vehicleCalculated = rs.getLong("calculated");
+                    vehicleTax = total(rs);
+                }
+            }
+        } catch (SQLException e) {
+            TOTALS_OP.recordError(start);
+            throw e;
+        }
+        TOTALS_OP.record(start, 2);
+        Totals result = new Totals(propertyCount, propertyCalculated, propertyTax,
+                                   vehicleCount, vehicleCalculated, vehicleTax);
+        totals = new Cached<>(current, null, result);
+        return result;
+    }
+
+    private static BigDecimal total(ResultSet rs) throws SQLException {
+        BigDecimal paise = rs.getBigDecimal("paise");
+        return paise == null ? BigDecimal.ZERO : Money.round(paise.movePointLeft(Money.SCALE));
+    }
+
+    // The summary report computed from records in memory, for repositories
+    // without SQL. Groups and their order match summaryReport().
+    static List<Row> summarize(Iterable<PropertyTax> properties, Iterable<VehicleTax> vehicles) {
+        TaxRates rates = Tax.getRates();
+        Map<String, Group> locations = new TreeMap<>();
+        Map<String, Group> ageBands = new TreeMap<>();
+        Map<String, Group> fuelTypes = new TreeMap<>();
+        Map<String, Group> brands = new TreeMap<>();
+        for (PropertyTax property : properties) {
+            char location = property.getLocation();
+            group(locations, location == 'Y' || location == 'y' ? "In City" : "Outside City", 0).add(property);
+            int age = property.getAge();
+            String band = age < 5 ? "0-4 years" : age < 10 ? "5-9 years" : age < 20 ? "10-19 years"
+                        : age < 50 ? "20-49 years" : "50+ years";
+            group(ageBands, band, age).add(property);
+        }
+        for (VehicleTax vehicle : vehicles) {
+            int type = vehicle.getType();
+            String name = rates.fuelTypeName(type);
+            group(fuelTypes, name != null ? name : NOT_SET, type).add(vehicle);
+            group(brands, vehicle.getBrand(), 0).add(vehicle);
+        }
+        List<Row> rows = new ArrayList<>();
+        addRows(rows, "Property by Location", locations);
+        addRows(rows, "Property by Age Band", ageBands);
+        addRows(rows, "Vehicle by Fuel Type", fuelTypes);
+        addRows(rows, "Vehicle by Brand", brands);
+        return Collections.unmodifiableList(rows);
+    }
+
+    // One group's aggregates; like SQL, AVG only counts rows with a calculated tax
+    private static class Group {
+        final String name;
+        int sortKey;
+        long count;
+        long calculated;
+        final Money.Sum total = new Money.Sum();
+
+        Group(String name, int sortKey) {
+            this.name = name;
+            this.sortKey = sortKey;
+        }
+
+        void add(Tax record) {
+            count++;
+            if (record.isCalculated()) {
+                calculated++;
+                total.add(record);
+            }
+        }
+    }
+
+    private static Group group(Map<String, Group> groups, String name, int sortKey) {
+        Group group = groups.computeIfAbsent(name, key -> new Group(key, sortKey));
+        group.sortKey = Math.min(group.sortKey, sortKey);
+        return group;
+    }
+
+    private static void addRows(List<Row> rows, String report, Map<String, Group> groups) {
+        List<Group> ordered = new ArrayList<>(groups.values());
+        ordered.sort(Comparator.comparingInt((Group group) -> group.sortKey).thenComparing(group -> group.name));
+        for (Group group : ordered) {
+            double total = group.total.value().doubleValue();
+            rows.add(new Row(report, group.name, group.count, total,
+                             group.calculated == 0 ? 0 : total / group.calculated));
+        }
+    }
+}
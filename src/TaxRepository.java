@@ -0,0 +1,172 @@
+import java.io.Closeable;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+// Storage for property and vehicle records. The menus, the CSV importer and the
+// HTTP server only talk to this interface, so they work the same over memory,
+// the local record log or a database.
+//
+// Records handed out by a repository are tracked: calculating one applies the
+// change to totals() straight away, and updateTax() then stores it. Records
+// passed to updateTax() and updateTaxBatch() must have come from the same
+// repository. Implementations are safe to call from several threads and report
+// storage failures as StorageException.
+interface TaxRepository extends Closeable {
+    int DEFAULT_BATCH_SIZE = 1000;
+    int MAX_PAGE_SIZE = 1000;
+
+    void addProperty(PropertyTax property);
+
+    // Returns false, storing nothing, if the registration number is taken
+    boolean addVehicle(VehicleTax vehicle);
+
+    // Throws IllegalArgumentException if the record doesn't fit this
+    // repository's storage, e.g. a brand longer than its brand field.
+    // addVehicle() and saveAll() check it too, before storing anything.
+    // Overrides call this too: Integer.MIN_VALUE is no registration number, as
+    // vehiclePage() takes it to mean the beginning and would skip the vehicle.
+    default void checkFits(Tax record) {
+        if (record instanceof VehicleTax vehicle && vehicle.getRegistrationNumber() == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Registration Number must be greater than " + Integer.MIN_VALUE + ".");
+        }
+    }
+
+    // Returns null if there is no such property
+    PropertyTax findProperty(long id);
+
+    // Returns null if there is no such vehicle
+    VehicleTax findVehicle(int registrNo);
+
+    // Stores a record's tax after calculateTax(), and a vehicle's type and price
+    void updateTax(Tax record);
+
+    // Adds many records at once; returns the ones rejected because their id or
+    // registration number was already taken
+    List<Tax> saveAll(Collection<? extends Tax> records);
+
+    // saveAll() for a stream, e.g. of parsed input, batchSize records at a time,
+    // so the stream needn't fit in memory
+    default List<Tax> saveAll(Stream<? extends Tax> records, int batchSize) {
+        List<Tax> rejected = new ArrayList<>();
+        List<Tax> batch = new ArrayList<>(batchSize);
+        Iterator<? extends Tax> it = records.iterator();
+        while (it.hasNext()) {
+            batch.add(it.next());
+            if (batch.size() == batchSize || !it.hasNext()) {
+                rejected.addAll(saveAll(batch));
+                batch.clear();
+            }
+        }
+        return rejected;
+    }
+
+    // Finds a property, calculates its tax and stores it as one step, so two
+    // calculations of the same record at once can't interleave; null if there
+    // is no such property
+    default PropertyTax calculateProperty(long id) {
+        PropertyTax property = findProperty(id);
+        if (property != null) {
+            property.calculateTax();
+            updateTax(property);
+        }
+        return property;
+    }
+
+    // Same for a vehicle, with its new fuel type and price
+    default VehicleTax calculateVehicle(int registrNo, int type, int price) {
+        VehicleTax vehicle = findVehicle(registrNo);
+        if (vehicle != null) {
+            vehicle.setTypeAndPrice(type, price);
+            vehicle.calculateTax();
+            updateTax(vehicle);
+        }
+        return vehicle;
+    }
+
+    // updateTax() for many records at once; the database stores them in one
+    // transaction, so the size of the collection is the transaction size
+    void updateTaxBatch(Collection<? extends Tax> records);
+
+    // Up to limit properties following the one with id afterId (0 to start at
+    // the beginning), in id order for the database, insertion order otherwise
+    List<PropertyTax> propertyPage(long afterId, int limit);
+
+    // Same for vehicles; Integer.MIN_VALUE starts at the beginning
+    List<VehicleTax> vehiclePage(int afterRegistrNo, int limit);
+
+    long propertyCount();
+
+    long vehicleCount();
+
+    // Tax of the calculated records per category, kept up to date as they change
+    RunningTotals totals();
+
+    // Checks totals() against a full recompute and resets them to it
+    List<RunningTotals.Reconciliation> reconcile();
+
+    // Lazily fetched a page at a time, so nothing is held between pages
+    default Stream<PropertyTax> streamAllProperties() {
+        return streamPropertiesAfter(0);
+    }
+
+    default Stream<PropertyTax> streamPropertiesAfter(long afterId) {
+        return pages(afterId, after -> propertyPage(after, MAX_PAGE_SIZE), PropertyTax::getId);
+    }
+
+    default Stream<VehicleTax> streamAllVehicles() {
+        return streamVehiclesAfter(Integer.MIN_VALUE);
+    }
+
+    default Stream<VehicleTax> streamVehiclesAfter(int afterRegistrNo) {
+        return pages((long) afterRegistrNo, after -> vehiclePage((int) after, MAX_PAGE_SIZE),
+                     VehicleTax::getRegistrationNumber);
+    }
+
+    // The report TaxReports runs in SQL, grouped here in memory instead
+    default List<TaxReports.Row> summary() {
+        try (Stream<PropertyTax> properties = streamAllProperties();
+             Stream<VehicleTax> vehicles = streamAllVehicles()) {
+            return TaxReports.summarize(properties::iterator, vehicles::iterator);
+        }
+    }
+
+    // Makes written records durable where the backend needs a separate step for it
+    default void flush() {
+    }
+
+    @Override
+    void close();
+
+    private static <T> Stream<T> pages(long start, LongFunction<List<T>> fetch, ToLongFunction<T> key) {
+        Iterator<T> iterator = new Iterator<T>() {
+            private long after = start;
+            private List<T> page = List.of();
+            private int next;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                if (next == page.size() && !last) {
+                    page = fetch.apply(after);
+                    next = 0;
+                    last = page.size() < MAX_PAGE_SIZE;
+                    if (!page.isEmpty()) {
+                        after = key.applyAsLong(page.get(page.size() - 1));
+                    }
+                }
+                return next < page.size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(next++);
+            }
+        };
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
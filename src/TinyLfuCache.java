@@ -0,0 +1,228 @@
+import java.util.*;
+
+// Bounded cache with W-TinyLFU eviction and a time to live. New entries go
+// into a small LRU window; an entry pushed out of the window only joins the
+// main LRU region if it has been asked for more often, by a frequency sketch
+// of recent requests, than the entry it would push out. A scan of keys seen
+// once, e.g. looking up every vehicle of an import, then passes through the
+// window without flushing the keys that are asked for again and again.
+//
+// Counts hits, misses, evictions, rejections (entries not admitted),
+// expirations and invalidations so it can be sized from real traffic.
+//
+// A value loaded from storage is stored with the token() taken before the
+// load. If anything was invalidated in the meantime the value may already be
+// stale, so it is not stored.
+class TinyLfuCache<K, V> {
+    static class Stats {
+        final int size;
+        final int maxSize;
+        final long hits;
+        final long misses;
+        final long evictions;
+        final long rejections;
+        final long expirations;
+        final long invalidations;
+
+        Stats(int size, int maxSize, long hits, long misses, long evictions, long rejections, long expirations,
+              long invalidations) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.rejections = rejections;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+        }
+
+        double hitRatio() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d entries, %d hits, %d misses (%.1f%% hits), %d evictions, %d rejections,"
+                                 + " %d expirations, %d invalidations", size, maxSize, hits, misses, 100 * hitRatio(),
+                                 evictions, rejections, expirations, invalidations);
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt; // System.nanoTime()
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Count-min sketch of 4-bit counters, four per key, halved every
+    // 10 * maxSize requests so that old popularity fades
+    private static class FrequencySketch {
+        private static final long[] SEEDS = { 0x97CB3127L, 0xA2FD4721L, 0xC0B3A5C1L, 0xE5B29D47L };
+
+        private final long[] table; // 16 counters per long
+        private final int sampleSize;
+        private int requests;
+
+        FrequencySketch(int maxSize) {
+            table = new long[Integer.highestOneBit(Math.max(maxSize, 16) - 1) << 1];
+            sampleSize = 10 * maxSize;
+        }
+
+        void increment(Object key) {
+            int hash = key.hashCode();
+            for (long seed : SEEDS) {
+                long h = spread(hash, seed);
+                int index = (int) h & (table.length - 1);
+                int shift = (int) (h >>> 60) << 2;
+                if (((table[index] >>> shift) & 0xF) < 0xF) {
+                    table[index] += 1L << shift;
+                }
+            }
+            if (++requests == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                requests /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = key.hashCode();
+            int frequency = 0xF;
+            for (long seed : SEEDS) {
+                long h = spread(hash, seed);
+                int shift = (int) (h >>> 60) << 2;
+                frequency = Math.min(frequency, (int) (table[(int) h & (table.length - 1)] >>> shift) & 0xF);
+            }
+            return frequency;
+        }
+
+        private static long spread(int hash, long seed) {
+            long h = (hash + seed) * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 29);
+        }
+    }
+
+    private final int maxSize;
+    private final int windowSize; // 1% of maxSize
+    private final long ttlNanos;
+    // Both in access order, so the first entry is the least recently used
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long generation; // bumped by every invalidation
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+    private long expirations;
+    private long invalidations;
+
+    TinyLfuCache(int maxSize, long ttlMillis) {
+        if (maxSize <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Cache size and time to live must be positive.");
+        }
+        this.maxSize = maxSize;
+        this.windowSize = Math.max(1, maxSize / 100);
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.sketch = new FrequencySketch(maxSize);
+    }
+
+    // The cached value, or null on a miss
+    synchronized V get(K key) {
+        sketch.increment(key);
+        LinkedHashMap<K, Entry<V>> region = window;
+        Entry<V> entry = region.get(key);
+        if (entry == null) {
+            region = main;
+            entry = region.get(key);
+        }
+        if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+            region.remove(key);
+            expirations++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    // Take before loading a value that will be passed to put()
+    synchronized long token() {
+        return generation;
+    }
+
+    synchronized void put(K key, V value, long token) {
+        if (token != generation) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, System.nanoTime() + ttlNanos);
+        if (main.containsKey(key)) {
+            main.put(key, entry);
+            return;
+        }
+        window.put(key, entry);
+        if (window.size() > windowSize) {
+            Map.Entry<K, Entry<V>> candidate = removeEldest(window);
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    synchronized void invalidate(K key) {
+        generation++;
+        invalidations++;
+        remove(key);
+    }
+
+    synchronized void invalidateAll(Collection<? extends K> keys) {
+        generation++;
+        invalidations += keys.size();
+        for (K key : keys) {
+            remove(key);
+        }
+    }
+
+    synchronized Stats stats() {
+        return new Stats(window.size() + main.size(), maxSize, hits, misses, evictions, rejections, expirations,
+                         invalidations);
+    }
+
+    // Moves an entry from the window to main, if it is asked for more often than main's victim
+    private void admit(K key, Entry<V> entry) {
+        if (window.size() + main.size() < maxSize) {
+            main.put(key, entry);
+            return;
+        }
+        Iterator<Map.Entry<K, Entry<V>>> eldest = main.entrySet().iterator();
+        if (eldest.hasNext()) {
+            Map.Entry<K, Entry<V>> victim = eldest.next();
+            if (sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+                eldest.remove();
+                evictions++;
+                main.put(key, entry);
+                return;
+            }
+        }
+        rejections++;
+    }
+
+    private void remove(K key) {
+        if (window.remove(key) == null) {
+            main.remove(key);
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        Map.Entry<K, V> eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.*;
+
+// Vehicles indexed by registration number.
+// An open-addressing table of primitive int keys (no Integer boxing) points
+// into a list that keeps the vehicles in insertion order for display.
+class VehicleRegistry implements Iterable<VehicleTax> {
+    private static final int EMPTY = 0; // slots hold list index + 1
+
+    private final List<VehicleTax> vehicles = new ArrayList<>();
+    private int[] keys;
+    private int[] slots;
+    private int mask;
+
+    VehicleRegistry() {
+        this(16);
+    }
+
+    VehicleRegistry(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    // Returns false, leaving the registry unchanged, if the registration number is taken
+    boolean add(VehicleTax vehicle) {
+        int key = vehicle.getRegistrationNumber();
+        int i = probe(key);
+        if (slots[i] != EMPTY) {
+            return false;
+        }
+        vehicles.add(vehicle);
+        keys[i] = key;
+        slots[i] = vehicles.size();
+        if (vehicles.size() * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    VehicleTax get(int registrNo) {
+        int slot = slots[probe(registrNo)];
+        return slot == EMPTY ? null : vehicles.get(slot - 1);
+    }
+
+    // Position in insertion order, or -1 if the registration number is not registered
+    int indexOf(int registrNo) {
+        return slots[probe(registrNo)] - 1;
+    }
+
+    boolean contains(int registrNo) {
+        return slots[probe(registrNo)] != EMPTY;
+    }
+
+    int size() {
+        return vehicles.size();
+    }
+
+    // Read-only view in insertion order
+    List<VehicleTax> asList() {
+        return Collections.unmodifiableList(vehicles);
+    }
+
+    @Override
+    public Iterator<VehicleTax> iterator() {
+        return asList().iterator();
+    }
+
+    // Slot holding the key, or the empty slot where it would go
+    private int probe(int key) {
+        int i = mix(key) & mask;
+        while (slots[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys, oldSlots = slots;
+        keys = new int[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] != EMPTY) {
+                int i = probe(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+    }
+
+    // Spreads sequential registration numbers across the table
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
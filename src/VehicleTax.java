@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// VehicleTax Class
+class VehicleTax extends Tax {
+    private int registrNo;
+    private String brand;
+    private int velocity;
+    private int seatCapacity;
+    private int type; // A fuel type of the rates, e.g. 1 for Petrol, 2 for Diesel, 3 for CNG
+    private int price; // Purchase cost
+
+    public VehicleTax(int registrNo, String brand, int velocity, int seatCapacity) {
+        super();
+        this.registrNo = registrNo;
+        this.brand = brand;
+        this.velocity = velocity;
+        this.seatCapacity = seatCapacity;
+    }
+
+    public VehicleTax(long id, int registrNo, String brand, int velocity, int seatCapacity) {
+        super(id);
+        this.registrNo = registrNo;
+        this.brand = brand;
+        this.velocity = velocity;
+        this.seatCapacity = seatCapacity;
+    }
+
+    // Add a method to set type and price
+    public void setTypeAndPrice(int type, int price) {
+        this.type = type;
+        this.price = price;
+    }
+
+    // Not memoized: the calculation is a few arithmetic operations on the
+    // compiled rates, several times cheaper than a lookup in a bounded cache.
+    // What repeats for the same vehicle is the SELECT, which the repository caches.
+    public void calculateTax() {
+        TaxRates rates = getRates();
+        long newTax;
+        try {
+            newTax = rates.vehicleTax(velocity, seatCapacity, type, price);
+        } catch (ArithmeticException e) { // too large for a long of paise
+            recordTax(rates.vehicleTaxExact(velocity, seatCapacity, type, price));
+            return;
+        }
+        if (newTax == TaxRates.NO_RATE) {
+            throw new IllegalArgumentException("Invalid fuel type!");
+        }
+        recordTax(newTax);
+    }
+
+    @Override
+    protected RunningTotals.Category category() {
+        return RunningTotals.Category.VEHICLE;
+    }
+
+    // A vehicle can only be calculated once its fuel type has been chosen
+    @Override
+    public boolean isPending() {
+        return super.isPending() && type != 0;
+    }
+
+    public int getRegistrationNumber() {
+        return registrNo;
+    }
+
+    static final int[] COLUMNS = { 5, 15, 10, 10, 10, 10, 10 };
+    static final String[] HEADERS = { "ID", "Brand", "Velocity", "Seats", "Type", "Price", "Tax" };
+
+    @Override
+    public void displayDetails() {
+        try (TableWriter table = TableWriter.toStdout(COLUMNS)) {
+            writeRow(table);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeRow(TableWriter table) throws IOException {
+        table.cell(registrNo).cell(brand).cell(velocity).cell(seatCapacity).cell(fuelTypeName(type)).cell(price).cell(getTax()).endRow();
+    }
+
+    // Named by the rates in use, see TaxRates
+    static String fuelTypeName(int type) {
+        String name = getRates().fuelTypeName(type);
+        return name != null ? name : "Unknown";
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public int getVelocity() {
+        return velocity;
+    }
+
+    public int getSeatCapacity() {
+        return seatCapacity;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getPrice() {
+        return price;
+    }
+}
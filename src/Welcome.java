@@ -0,0 +1,27 @@
+import java.util.Scanner;
+
+// Welcome Class
+class Welcome {
+    public static boolean input() {
+        Scanner sc = new Scanner(System.in);
+        System.out.println("+-------------------------------------+");
+        System.out.println("|   WELCOME TO TAX CALCULATION APP    |");
+        System.out.println("+-------------------------------------+");
+        System.out.print("USERNAME: ");
+        String username = sc.nextLine();
+        System.out.print("PASSWORD: ");
+        String password = sc.nextLine();
+
+        if (authenticate(username, password)) {
+            System.out.println("Authentication Successful\n");
+            return true;
+        } else {
+            System.out.println("Invalid Credentials. Exiting.");
+            return false;
+        }
+    }
+
+    public static boolean authenticate(String username, String password) {
+        return "admin".equals(username) && "admin123".equals(password);
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Bounded queue of pending writes that a background thread hands to the
+// writer in batches, once maxBatch writes are pending or the oldest has
+// waited maxDelayMillis. A write to a key that is still pending replaces
+// the pending value, so a row changed several times before the writer gets
+// to it is written once.
+//
+// put() blocks while the queue is full and gives up after putTimeoutMillis.
+// A batch the writer fails on goes back into the queue and is retried after
+// maxDelayMillis; until it succeeds, get() keeps returning its values.
+class WriteBehindQueue<K, V> implements AutoCloseable {
+    private final int capacity;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final long putTimeoutNanos;
+    private final Consumer<List<V>> writer;
+    private final Thread thread;
+    private final LinkedHashMap<K, V> pending = new LinkedHashMap<>(); // oldest first
+    private final Map<K, V> inFlight = new HashMap<>();                // being written
+    private final LongAdder coalesced = new LongAdder();
+    private long oldestNanos;   // when the oldest pending write was queued
+    private long retryNanos;    // no batch before this after a failure
+    private boolean flushing;   // someone is waiting for the queue to drain
+    private long failures;
+    private RuntimeException failure; // of the last batch, null once one succeeds
+    private boolean closed;
+
+    WriteBehindQueue(String name, int capacity, int maxBatch, long maxDelayMillis, long putTimeoutMillis,
+                     Consumer<List<V>> writer) {
+        if (capacity <= 0 || maxBatch <= 0 || maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("Capacity, batch size and delay must be positive.");
+        }
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.putTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(putTimeoutMillis);
+        this.writer = writer;
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true); // close() or flush() writes what is pending; the process needn't wait for it
+        thread.start();
+    }
+
+    synchronized void put(K key, V value) {
+        if (closed) {
+            throw new IllegalStateException("Write-behind queue is closed.");
+        }
+        long deadline = System.nanoTime() + putTimeoutNanos;
+        while (pending.size() >= capacity && !pending.containsKey(key)) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new StorageException("Timed out waiting for " + pending.size() + " pending writes"
+                                           + (failure == null ? "." : ": " + failure.getMessage()), failure);
+            }
+            await(left);
+        }
+        if (pending.isEmpty()) {
+            oldestNanos = System.nanoTime();
+        }
+        if (pending.put(key, value) != null) {
+            coalesced.increment();
+        }
+        if (pending.size() >= maxBatch) {
+            notifyAll();
+        }
+    }
+
+    // The value waiting to be written for key, or null if there is none
+    synchronized V get(K key) {
+        V value = pending.get(key);
+        return value != null ? value : inFlight.get(key);
+    }
+
+    synchronized boolean isEmpty() {
+        return pending.isEmpty() && inFlight.isEmpty();
+    }
+
+    synchronized int size() {
+        return pending.size() + inFlight.size();
+    }
+
+    // Writes replaced by a later write to the same key before they were written
+    long coalesced() {
+        return coalesced.sum();
+    }
+
+    // Blocks until everything queued so far is written. Throws the writer's
+    // exception if a write fails in the meantime; the writes stay queued.
+    synchronized void flush() {
+        long failuresBefore = failures;
+        flushing = true;
+        notifyAll();
+        try {
+            while (!pending.isEmpty() || !inFlight.isEmpty()) {
+                if (failures != failuresBefore && failure != null) {
+                    throw new StorageException("Could not write " + size() + " pending writes: "
+                                               + failure.getMessage(), failure);
+                }
+                await(Long.MAX_VALUE);
+            }
+        } finally {
+            flushing = false;
+        }
+    }
+
+    // Flushes and stops the writer. If the flush fails the queue stays open,
+    // so a later close() can try again.
+    @Override
+    public void close() {
+        flush();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<K> keys = new ArrayList<>(maxBatch);
+        List<V> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            synchronized (this) {
+                long wait;
+                while ((wait = untilNextBatch()) > 0) {
+                    if (closed && pending.isEmpty()) {
+                        return;
+                    }
+                    await(wait);
+                }
+                Iterator<Map.Entry<K, V>> it = pending.entrySet().iterator();
+                while (it.hasNext() && batch.size() < maxBatch) {
+                    Map.Entry<K, V> entry = it.next();
+                    keys.add(entry.getKey());
+                    batch.add(entry.getValue());
+                    inFlight.put(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+                notifyAll(); // room for blocked put() calls
+            }
+            RuntimeException error = null;
+            try {
+                writer.accept(batch);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            synchronized (this) {
+                for (int i = 0; i < keys.size(); i++) {
+                    V value = inFlight.remove(keys.get(i));
+                    if (error != null) {
+                        pending.putIfAbsent(keys.get(i), value); // unless a newer write replaced it
+                    }
+                }
+                failure = error;
+                if (error != null) {
+                    failures++;
+                    retryNanos = System.nanoTime() + maxDelayNanos;
+                    oldestNanos = System.nanoTime();
+                }
+                notifyAll();
+            }
+            if (error != null) {
+                System.err.println("Error: Write-behind batch of " + batch.size() + " failed, retrying: "
+                                   + error.getMessage());
+            }
+            keys.clear();
+            batch.clear();
+        }
+    }
+
+    // Nanoseconds until a batch is due; at most 0 if one is due now. Guarded by this.
+    private long untilNextBatch() {
+        if (pending.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        long now = System.nanoTime();
+        long retry = retryNanos - now;
+        if (failure != null && retry > 0) {
+            return retry;
+        }
+        if (pending.size() >= maxBatch || flushing || closed) {
+            return 0;
+        }
+        return oldestNanos + maxDelayNanos - now;
+    }
+
+    // Guarded by this
+    private void await(long nanos) {
+        try {
+            if (nanos == Long.MAX_VALUE) {
+                wait();
+            } else {
+                TimeUnit.NANOSECONDS.timedWait(this, nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted waiting for pending writes.", e);
+        }
+    }
+}